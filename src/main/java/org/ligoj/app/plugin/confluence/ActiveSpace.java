@@ -0,0 +1,39 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.confluence;
+
+import java.time.Instant;
+
+import org.ligoj.bootstrap.core.NamedBean;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * A Confluence space with its recent activity, aggregated across all spaces of a node.
+ */
+@Getter
+@Setter
+public class ActiveSpace extends NamedBean<String> {
+
+	/**
+	 * SID
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Amount of recently updated contents in this space.
+	 */
+	private int count;
+
+	/**
+	 * The last update within this space, serialized as an ISO-8601 date. May be <code>null</code>.
+	 */
+	@JsonSerialize(using = ToStringSerializer.class)
+	private Instant lastUpdate;
+
+}
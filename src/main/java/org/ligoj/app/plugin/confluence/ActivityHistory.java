@@ -0,0 +1,178 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.confluence;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntSupplier;
+
+/**
+ * The activity history of the spaces, for the trend charts and the dormant space detection. The observed edits are
+ * counted per space and per UTC day in dense arrays of counters, so a range is answered without Confluence. The raw
+ * edits are only kept during a short window, to ignore an edit observed twice, for instance by the webhook then by
+ * the indexing delta. After this window, only the daily counters remain.
+ */
+class ActivityHistory {
+
+	/**
+	 * Amount of days the raw edits are kept. An older edit is only accepted by a backfill.
+	 */
+	static final int RAW_DAYS = 7;
+
+	private static final long DAY = 24 * 60 * 60 * 1000L;
+
+	/**
+	 * The daily counters of a space.
+	 */
+	private static final class Series {
+
+		/**
+		 * Epoch day of the first counter.
+		 */
+		private long first;
+
+		/**
+		 * Edit counters, one per day from the first day.
+		 */
+		private int[] counts = new int[0];
+
+		/**
+		 * Moments in milliseconds of the edits within the raw window.
+		 */
+		private final TreeSet<Long> recent = new TreeSet<>();
+
+		private void increment(final long day) {
+			if (counts.length == 0) {
+				first = day;
+				counts = new int[1];
+			} else if (day < first) {
+				final var grown = new int[counts.length + (int) (first - day)];
+				System.arraycopy(counts, 0, grown, (int) (first - day), counts.length);
+				counts = grown;
+				first = day;
+			} else if (day >= first + counts.length) {
+				counts = Arrays.copyOf(counts, (int) (day - first + 1));
+			}
+			counts[(int) (day - first)]++;
+		}
+
+		private void trim(final long oldest) {
+			if (first < oldest) {
+				final var shift = (int) Math.min(oldest - first, counts.length);
+				counts = Arrays.copyOfRange(counts, shift, counts.length);
+				first = counts.length == 0 ? oldest : first + shift;
+			}
+		}
+	}
+
+	private final Map<String, Series> series = new ConcurrentHashMap<>();
+
+	/**
+	 * The amount of days of the daily counters.
+	 */
+	private final IntSupplier retention;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param retention The amount of days of the daily counters, read for each edit.
+	 */
+	ActivityHistory(final IntSupplier retention) {
+		this.retention = retention;
+	}
+
+	/**
+	 * Record an edit of a space. The moment identifies the edit within the raw window.
+	 *
+	 * @param space    The space, see {@link ConfluenceCache#toKey(String, String)}.
+	 * @param when     The edit moment.
+	 * @param backfill When <code>true</code>, an edit older than the raw window is counted without duplicate check.
+	 *                 Only for a first full scan of the space.
+	 * @return <code>true</code> when the edit has been counted.
+	 */
+	boolean record(final String space, final Instant when, final boolean backfill) {
+		final var now = System.currentTimeMillis();
+		final var today = Math.floorDiv(now, DAY);
+		final var moment = when.toEpochMilli();
+		final var day = Math.floorDiv(moment, DAY);
+		final var oldest = today - retention.getAsInt() + 1;
+		if (day < oldest) {
+			return false;
+		}
+		final var target = series.computeIfAbsent(space, s -> new Series());
+		synchronized (target) {
+			final var window = now - RAW_DAYS * DAY;
+			target.recent.headSet(window).clear();
+			if (moment < window ? !backfill : !target.recent.add(moment)) {
+				return false;
+			}
+			target.increment(day);
+			target.trim(oldest);
+		}
+		return true;
+	}
+
+	/**
+	 * Return the daily edit counters of a space.
+	 *
+	 * @param space The space, see {@link ConfluenceCache#toKey(String, String)}.
+	 * @param from  The first day, inclusive.
+	 * @param to    The last day, inclusive.
+	 * @return The counters, one per day from the first day. Zero for the unknown days.
+	 */
+	int[] getCounts(final String space, final LocalDate from, final LocalDate to) {
+		final var result = new int[(int) (to.toEpochDay() - from.toEpochDay() + 1)];
+		final var target = series.get(space);
+		if (target != null) {
+			synchronized (target) {
+				final var start = Math.max(from.toEpochDay(), target.first);
+				final var end = Math.min(to.toEpochDay(), target.first + target.counts.length - 1);
+				for (var day = start; day <= end; day++) {
+					result[(int) (day - from.toEpochDay())] = target.counts[(int) (day - target.first)];
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Return the last day with an edit of a space.
+	 *
+	 * @param space The space, see {@link ConfluenceCache#toKey(String, String)}.
+	 * @return The last active day, or <code>null</code> when there is no edit within the retention.
+	 */
+	LocalDate getLastActive(final String space) {
+		final var target = series.get(space);
+		if (target != null) {
+			synchronized (target) {
+				for (var i = target.counts.length - 1; i >= 0; i--) {
+					if (target.counts[i] > 0) {
+						return LocalDate.ofEpochDay(target.first + i);
+					}
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Remove the history of a space.
+	 *
+	 * @param space The space, see {@link ConfluenceCache#toKey(String, String)}.
+	 */
+	void removeSpace(final String space) {
+		series.remove(space);
+	}
+
+	/**
+	 * Remove all histories.
+	 */
+	void clear() {
+		series.clear();
+	}
+}
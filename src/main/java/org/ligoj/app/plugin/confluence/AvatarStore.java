@@ -0,0 +1,259 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.confluence;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.imageio.ImageIO;
+
+import org.ligoj.bootstrap.core.curl.CurlProcessor;
+import org.ligoj.bootstrap.core.curl.CurlRequest;
+import org.springframework.stereotype.Component;
+
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.ws.rs.HttpMethod;
+
+/**
+ * In memory store of the avatars, referenced by an identifier derived from their Confluence URL. The oldest avatars are
+ * evicted first. Only PNG thumbnails are stored: the images are read with a hard size limit and downscaled once.
+ */
+@Component
+public class AvatarStore {
+
+	/**
+	 * Maximal size in bytes of a fetched avatar. Bigger images are ignored.
+	 */
+	static final int MAX_BYTES = 256 * 1024;
+
+	/**
+	 * Thumbnail width and height in pixels.
+	 */
+	static final int THUMBNAIL_SIZE = 48;
+
+	/**
+	 * Maximal amount of pixels of a decoded avatar. Bigger images are ignored.
+	 */
+	static final long MAX_PIXELS = 4096L * 4096L;
+
+	/**
+	 * Maximal amount of stored avatars.
+	 */
+	static final int MAX_ENTRIES = 1000;
+
+	/**
+	 * Avatar identifiers by owner login.
+	 */
+	private final Map<String, String> owners = new ConcurrentHashMap<>();
+
+	private final Map<String, byte[]> avatars = new LinkedHashMap<>(16, 0.75f, true) {
+
+		/**
+		 * SID
+		 */
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<String, byte[]> eldest) {
+			return size() > MAX_ENTRIES;
+		}
+	};
+
+	/**
+	 * Return the avatar identifier of the given URL.
+	 *
+	 * @param url The avatar URL.
+	 * @return The avatar identifier.
+	 */
+	public String toId(final String url) {
+		try {
+			return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(url.getBytes(StandardCharsets.UTF_8)));
+		} catch (final NoSuchAlgorithmException e) {
+			// SHA-256 is available in every JVM
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Return the identifier of the avatar thumbnail of the given URL. The thumbnail is fetched and built only when not
+	 * yet stored.
+	 *
+	 * @param processor The processor used to fetch the avatar.
+	 * @param url       The avatar URL.
+	 * @param owner     The avatar owner login.
+	 * @return The avatar identifier, or <code>null</code> when the avatar is not available.
+	 */
+	public String resolve(final CurlProcessor processor, final String url, final String owner) {
+		final var id = toId(url);
+		if (get(id) != null) {
+			// Already stored, possibly for another owner
+			owners.put(owner, id);
+			return id;
+		}
+		final var result = new String[1];
+		processor.process(new CurlRequest(HttpMethod.GET, url, null, (req, res) -> {
+			final var entity = res.getEntity();
+			if (res.getCode() == HttpServletResponse.SC_OK && entity != null && entity.getContentLength() <= MAX_BYTES) {
+				final var thumbnail = toThumbnail(read(entity.getContent()));
+				if (thumbnail != null) {
+					result[0] = put(url, thumbnail);
+				}
+			}
+			return true;
+		}));
+		if (result[0] != null) {
+			owners.put(owner, result[0]);
+		}
+		return result[0];
+	}
+
+	/**
+	 * Read the stream up to the size limit.
+	 *
+	 * @param input The stream to read.
+	 * @return The read bytes, or <code>null</code> when the stream exceeds the limit.
+	 * @throws IOException When the stream cannot be read.
+	 */
+	private byte[] read(final InputStream input) throws IOException {
+		try (input) {
+			final byte[] bytes = input.readNBytes(MAX_BYTES + 1);
+			return bytes.length > MAX_BYTES ? null : bytes;
+		}
+	}
+
+	/**
+	 * Return the PNG thumbnail of an image, downscaled when bigger than the thumbnail size. The dimensions are read
+	 * before the decoding, so an image declaring a huge size is not decoded, and only the pixels needed by the
+	 * thumbnail are decoded.
+	 *
+	 * @param image The image bytes. May be <code>null</code>.
+	 * @return The PNG thumbnail, or <code>null</code> when the image cannot be decoded or is too big.
+	 * @throws IOException When the image cannot be read.
+	 */
+	protected byte[] toThumbnail(final byte[] image) throws IOException {
+		if (image == null) {
+			return null;
+		}
+		final BufferedImage source;
+		try (var input = ImageIO.createImageInputStream(new ByteArrayInputStream(image))) {
+			final var readers = ImageIO.getImageReaders(input);
+			if (!readers.hasNext()) {
+				// Not a supported image
+				return null;
+			}
+			final var reader = readers.next();
+			try {
+				reader.setInput(input, true, true);
+				final int width = reader.getWidth(0);
+				final int height = reader.getHeight(0);
+				if ((long) width * height > MAX_PIXELS) {
+					// A small file may declare a huge image
+					return null;
+				}
+
+				// Skip the pixels beyond twice the thumbnail resolution
+				final int step = Math.max(1, Math.max(width, height) / (THUMBNAIL_SIZE * 2));
+				final var param = reader.getDefaultReadParam();
+				param.setSourceSubsampling(step, step, 0, 0);
+				source = reader.read(0, param);
+			} finally {
+				reader.dispose();
+			}
+		}
+
+		// Downscale keeping the ratio, the thumbnail is always a PNG image
+		final double ratio = Math.min(1, Math.min((double) THUMBNAIL_SIZE / source.getWidth(),
+				(double) THUMBNAIL_SIZE / source.getHeight()));
+		final int width = Math.max(1, (int) Math.round(source.getWidth() * ratio));
+		final int height = Math.max(1, (int) Math.round(source.getHeight() * ratio));
+		final var thumbnail = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		final Graphics2D graphics = thumbnail.createGraphics();
+		try {
+			graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			graphics.drawImage(source, 0, 0, width, height, null);
+		} finally {
+			graphics.dispose();
+		}
+		final var output = new ByteArrayOutputStream();
+		ImageIO.write(thumbnail, "png", output);
+		return output.toByteArray();
+	}
+
+	/**
+	 * Return the stored avatar as a data URL.
+	 *
+	 * @param id The avatar identifier.
+	 * @return The data URL, or <code>null</code> when not stored.
+	 */
+	public String toDataUrl(final String id) {
+		final byte[] image = get(id);
+		return image == null ? null : "data:image/png;base64," + Base64.getEncoder().encodeToString(image);
+	}
+
+	/**
+	 * Store an avatar.
+	 *
+	 * @param url   The avatar URL.
+	 * @param image The image bytes.
+	 * @return The avatar identifier.
+	 */
+	public String put(final String url, final byte[] image) {
+		final var id = toId(url);
+		synchronized (avatars) {
+			avatars.put(id, image);
+		}
+		return id;
+	}
+
+	/**
+	 * Evict the avatar of a user.
+	 *
+	 * @param owner The avatar owner login.
+	 * @return The evicted avatar identifier, or <code>null</code> when not stored.
+	 */
+	public String evict(final String owner) {
+		final var id = owners.remove(owner);
+		if (id != null) {
+			synchronized (avatars) {
+				avatars.remove(id);
+			}
+		}
+		return id;
+	}
+
+	/**
+	 * Evict all stored avatars.
+	 */
+	public void clear() {
+		owners.clear();
+		synchronized (avatars) {
+			avatars.clear();
+		}
+	}
+
+	/**
+	 * Return the stored avatar.
+	 *
+	 * @param id The avatar identifier.
+	 * @return The image bytes, or <code>null</code> when not stored.
+	 */
+	public byte[] get(final String id) {
+		synchronized (avatars) {
+			return avatars.get(id);
+		}
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.confluence;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang3.Strings;
+import org.ligoj.bootstrap.resource.system.configuration.ConfigurationResource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * The caches of this plug-in. They are filled by the Confluence requests and updated by the Confluence webhooks.
+ */
+@Component
+public class ConfluenceCache {
+
+	/**
+	 * Configuration key of the time to live in seconds of the space activities.
+	 */
+	public static final String CONF_SPACE_ACTIVITY_TTL = ConfluencePluginResource.KEY + ":space-activity-ttl";
+
+	/**
+	 * Configuration key of the time to live in seconds of the space existence.
+	 */
+	public static final String CONF_SPACE_TTL = ConfluencePluginResource.KEY + ":space-ttl";
+
+	/**
+	 * Configuration key of the time to live in seconds of the sidebar links of a user.
+	 */
+	public static final String CONF_LINKS_TTL = ConfluencePluginResource.KEY + ":links-ttl";
+
+	/**
+	 * Configuration key of the time to live in seconds of the node visibilities and parameters. Ligoj publishes no
+	 * event when a delegation or a node parameter changes, so these entries are only invalidated by this delay: a
+	 * revoked delegation or an updated node is seen after at most this delay. The delay is capped by
+	 * {@link #MAX_NODE_TTL}.
+	 */
+	public static final String CONF_NODE_TTL = ConfluencePluginResource.KEY + ":node-ttl";
+
+	/**
+	 * Maximal time to live in seconds of the node visibilities and parameters, whatever the configuration.
+	 */
+	static final int MAX_NODE_TTL = 300;
+
+	/**
+	 * Configuration key of the amount of days of the space activity history.
+	 */
+	public static final String CONF_HISTORY_DAYS = ConfluencePluginResource.KEY + ":history-days";
+
+	@Autowired
+	private ConfigurationResource configuration;
+
+	/**
+	 * Visibility of a node by a user, by user login and node identifier, see {@link #toKey(String, String)}. A
+	 * delegation change is seen after at most {@link #CONF_NODE_TTL}.
+	 */
+	final TimedCache<String, Boolean> visibleNodes = new TimedCache<>(this::getNodeTtl, 10000);
+
+	/**
+	 * Read-only node parameters, by node identifier. A node parameter change is seen after at most
+	 * {@link #CONF_NODE_TTL}.
+	 */
+	final TimedCache<String, Map<String, String>> nodeParameters = new TimedCache<>(this::getNodeTtl, 100);
+
+	/**
+	 * Existing spaces, without activity, by space key, see {@link #toKey(String, String)}.
+	 */
+	final TimedCache<String, SpaceSummary> spaces = new TimedCache<>(
+			() -> configuration.get(CONF_SPACE_TTL, 300) * 1000L, 10000);
+
+	/**
+	 * Last activity of each space, by space key, see {@link #toKey(String, String)}. An empty value means there is no
+	 * activity.
+	 */
+	final TimedCache<String, Optional<SpaceActivity>> activities = new TimedCache<>(
+			() -> configuration.get(CONF_SPACE_ACTIVITY_TTL, 60) * 1000L, 10000);
+
+	/**
+	 * Node activity aggregations, by node identifier.
+	 */
+	final TimedCache<String, Collection<ActiveSpace>> nodeActivities = new TimedCache<>(
+			() -> configuration.get(ConfluencePluginResource.CONF_ACTIVITY_TTL, 300) * 1000L, 100);
+
+	/**
+	 * Recent spaces of a user, by node identifier and user login, see {@link #toKey(String, String)}.
+	 */
+	final TimedCache<String, List<SpaceLink>> links = new TimedCache<>(
+			() -> configuration.get(CONF_LINKS_TTL, 60) * 1000L, 10000);
+
+	/**
+	 * Full-text index of the page titles and labels of the subscribed spaces.
+	 */
+	final PageIndex pages = new PageIndex();
+
+	/**
+	 * Daily edit counts of the spaces, by space key, see {@link #toKey(String, String)}.
+	 */
+	final ActivityHistory history = new ActivityHistory(() -> configuration.get(CONF_HISTORY_DAYS, 400));
+
+	/**
+	 * Catalog of all spaces, by node identifier. Only for the nodes in catalog mode, see
+	 * {@link ConfluencePluginResource#PARAMETER_CATALOG}. A stale catalog is still used while the next one is built.
+	 */
+	final Map<String, SpaceCatalog> catalogs = new ConcurrentHashMap<>();
+
+	/**
+	 * All subscribed spaces, under a single empty key. Refreshed as often as the page index.
+	 */
+	final TimedCache<String, Collection<ConfluenceSearchResource.Target>> subscriptions = new TimedCache<>(
+			() -> configuration.get(ConfluenceSearchResource.CONF_INDEX_TTL, 600) * 1000L, 1);
+
+	/**
+	 * Return the time to live of the node visibilities and parameters, see {@link #CONF_NODE_TTL}.
+	 *
+	 * @return The time to live in milliseconds.
+	 */
+	long getNodeTtl() {
+		return Math.min(configuration.get(CONF_NODE_TTL, 30), MAX_NODE_TTL) * 1000L;
+	}
+
+	/**
+	 * Return the cache key of a space.
+	 *
+	 * @param url   The Confluence base URL.
+	 * @param space The space key.
+	 * @return The cache key of this space.
+	 */
+	public static String toKey(final String url, final String space) {
+		return Strings.CS.removeEnd(url, "/") + "/" + space;
+	}
+
+	/**
+	 * Evict all entries.
+	 */
+	public void clear() {
+		visibleNodes.clear();
+		nodeParameters.clear();
+		spaces.clear();
+		activities.clear();
+		nodeActivities.clear();
+		links.clear();
+		pages.clear();
+		history.clear();
+		subscriptions.clear();
+		catalogs.clear();
+	}
+}
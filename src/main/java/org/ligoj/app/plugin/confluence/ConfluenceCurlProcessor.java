@@ -3,10 +3,26 @@
  */
 package org.ligoj.app.plugin.confluence;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang3.Strings;
 import org.ligoj.bootstrap.core.curl.CurlProcessor;
 import org.ligoj.bootstrap.core.curl.CurlRequest;
 import org.ligoj.bootstrap.core.curl.HttpResponseCallback;
 
+import jakarta.ws.rs.HttpMethod;
+
 /**
  * Confluence Curl processor.
  */
@@ -17,11 +33,323 @@ public class ConfluenceCurlProcessor extends CurlProcessor {
 	 */
 	public static final HttpResponseCallback LOGIN_CALLBACK = new ConfluenceLoginHttpResponseCallback();
 
+	/**
+	 * Maximal wait in milliseconds for an available connection, even without deadline.
+	 */
+	static final long MAX_WAIT = DEFAULT_TIMEOUT;
+
+	/**
+	 * Status codes of the transient failures, in addition to the connection failures and the timeouts.
+	 */
+	private static final List<Integer> TRANSIENT_STATUS = List.of(429, 502, 503, 504);
+
+	/**
+	 * Status codes of a request whose session has been invalidated by Confluence.
+	 */
+	private static final List<Integer> LOGGED_OUT_STATUS = List.of(401, 302, 303);
+
+	/**
+	 * An idempotent GET request, see {@link #newGet(String)}.
+	 */
+	private static final class IdempotentRequest extends CurlRequest {
+
+		private IdempotentRequest(final String url) {
+			super(HttpMethod.GET, url, null);
+		}
+	}
+
+	/**
+	 * The outcome of an attempt.
+	 */
+	private record Attempt(CurlRequest request, boolean success, long latency) {
+	}
+
+	/**
+	 * The hedging policy of the idempotent requests. May be <code>null</code>.
+	 */
+	private final HedgingPolicy policy;
+
+	/**
+	 * Executor of the hedged attempts, owned by the caller. May be <code>null</code> without policy.
+	 */
+	private final ExecutorService executor;
+
+	/**
+	 * Available connections to the Confluence node, one is held by each request. May be <code>null</code>.
+	 */
+	private final Semaphore permits;
+
+	/**
+	 * Authentication of this processor, replayed once when Confluence has invalidated the session. May be
+	 * <code>null</code>.
+	 */
+	private Runnable login;
+
+	/**
+	 * Amount of replayed authentications, so the concurrent requests rejected by the same invalidation trigger a
+	 * single authentication.
+	 */
+	private final AtomicInteger logins = new AtomicInteger();
+
+	/**
+	 * Constructor without hedging nor retry.
+	 */
+	public ConfluenceCurlProcessor() {
+		this(null, null, null);
+	}
+
+	/**
+	 * Constructor with a hedging policy for the idempotent requests.
+	 *
+	 * @param policy   The hedging policy of the Confluence node. May be <code>null</code>.
+	 * @param executor The executor of the hedged attempts. Its lifecycle is managed by the caller.
+	 * @param permits  The available connections to the Confluence node, shared by its processors. May be
+	 *                 <code>null</code>.
+	 */
+	ConfluenceCurlProcessor(final HedgingPolicy policy, final ExecutorService executor, final Semaphore permits) {
+		this.policy = policy;
+		this.executor = executor;
+		this.permits = permits;
+	}
+
+	/**
+	 * Set the authentication replayed once when Confluence invalidates the session before its end.
+	 *
+	 * @param login The authentication of this processor.
+	 */
+	void setLogin(final Runnable login) {
+		this.login = login;
+	}
+
+	/**
+	 * Return an idempotent GET request saving its response. Such request may be hedged and retried, see
+	 * {@link HedgingPolicy}. The response of the first successful attempt is kept.
+	 *
+	 * @param url The URL to get.
+	 * @return The new request.
+	 */
+	public static CurlRequest newGet(final String url) {
+		final var request = new IdempotentRequest(url);
+		request.setSaveResponse(true);
+		return request;
+	}
+
 	@Override
 	protected boolean process(final CurlRequest request) {
+		// Bound the request by the remaining time of the current operation
+		final long remaining = Deadline.remaining();
+		if (remaining <= 0) {
+			return false;
+		}
+		if (remaining < Integer.MAX_VALUE) {
+			request.setTimeout((int) Math.min(remaining, Objects.requireNonNullElse(request.getTimeout(), Integer.MAX_VALUE)));
+		}
+
 		// Add headers for SSO
 		request.getHeaders().put("X-Atlassian-Token", "nocheck");
-		return super.process(request);
+		if (policy == null || !(request instanceof IdempotentRequest)) {
+			return processPermitted(request, getWait());
+		}
+		final var generation = logins.get();
+		final var result = processIdempotent(request);
+		if (!result.success() && login != null && isLoggedOut(result.request()) && relogin(generation)) {
+			// The session has been invalidated by Confluence, replay the request once authenticated again
+			return processIdempotent(request).success();
+		}
+		return result.success();
+	}
+
+	/**
+	 * Return the wait for an available connection: the remaining time of the current operation when defined, and
+	 * within the maximal wait.
+	 */
+	private static long getWait() {
+		return Math.max(0, Math.min(Deadline.remaining(), MAX_WAIT));
+	}
+
+	/**
+	 * Process a request holding a connection.
+	 *
+	 * @param wait The maximal wait in milliseconds for an available connection.
+	 * @return <code>true</code> when the request succeeded. <code>false</code> when no connection is available.
+	 */
+	private boolean processPermitted(final CurlRequest request, final long wait) {
+		if (!acquire(wait)) {
+			return false;
+		}
+		try {
+			return super.process(request);
+		} finally {
+			release();
+		}
+	}
+
+	/**
+	 * Acquire a connection.
+	 *
+	 * @param wait The maximal wait in milliseconds for an available connection.
+	 * @return <code>true</code> when a connection is acquired, to be released.
+	 */
+	private boolean acquire(final long wait) {
+		try {
+			return permits == null || permits.tryAcquire(wait, TimeUnit.MILLISECONDS);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * Release an acquired connection.
+	 */
+	private void release() {
+		if (permits != null) {
+			permits.release();
+		}
+	}
+
+	/**
+	 * Authenticate again, unless another request already did it since the given generation.
+	 *
+	 * @return <code>true</code> when the processor is authenticated again.
+	 */
+	private boolean relogin(final int generation) {
+		synchronized (logins) {
+			if (logins.get() == generation) {
+				try {
+					login.run();
+				} catch (final RuntimeException e) {
+					return false;
+				}
+				logins.incrementAndGet();
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Indicate the session has been invalidated by Confluence: the request is rejected or redirected to the login
+	 * page, since the REST resources do not redirect otherwise.
+	 */
+	private boolean isLoggedOut(final CurlRequest request) {
+		return LOGGED_OUT_STATUS.contains(request.getStatus())
+				|| Strings.CS.contains(request.getResponse(), "name=\"os_username\"");
+	}
+
+	/**
+	 * Process an idempotent request: hedged after the policy delay, and retried after a transient failure with an
+	 * exponential backoff, while the budget of the node and the current deadline allow it.
+	 */
+	private Attempt processIdempotent(final CurlRequest request) {
+		policy.deposit();
+		for (var attempt = 0;; attempt++) {
+			final var result = processHedged(request);
+			request.setResponse(result.request().getResponse());
+			if (result.success()) {
+				policy.record(result.latency());
+				return result;
+			}
+			if (attempt >= policy.getRetries() || !isTransient(result.request())) {
+				return result;
+			}
+			final var backoff = policy.getBackoff(attempt);
+			if (backoff >= Deadline.remaining() || !policy.withdraw()) {
+				return result;
+			}
+			try {
+				Thread.sleep(backoff);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return result;
+			}
+		}
+	}
+
+	/**
+	 * Send a copy of the request, and a second one when the first one is slower than the hedge delay and a connection
+	 * is free. The first successful attempt wins, the slower one is cancelled.
+	 */
+	private Attempt processHedged(final CurlRequest request) {
+		final var winner = new CompletableFuture<Attempt>();
+		final var pending = new AtomicInteger(1);
+		final var attempts = new ArrayList<Future<?>>(2);
+		submit(request, winner, pending, getWait(), attempts);
+		final var delay = policy.getHedgeDelay();
+		try {
+			if (delay < 0) {
+				return winner.get();
+			}
+			try {
+				return winner.get(delay, TimeUnit.MILLISECONDS);
+			} catch (final TimeoutException e) {
+				if (Deadline.remaining() > 0 && policy.withdraw()) {
+					// Slow request, send a duplicate only when a connection is free, behind the other requests
+					pending.incrementAndGet();
+					submit(request, winner, pending, 0, attempts);
+				}
+				return winner.get();
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return new Attempt(request, false, 0);
+		} catch (final ExecutionException e) {
+			return new Attempt(request, false, 0);
+		} finally {
+			// Abort the slower attempt, its connection is released
+			attempts.forEach(a -> a.cancel(true));
+		}
+	}
+
+	/**
+	 * Send an attempt in background holding a connection. The winner is the first successful attempt, or the last
+	 * failed one.
+	 *
+	 * @param wait The maximal wait in milliseconds for an available connection.
+	 */
+	private void submit(final CurlRequest request, final CompletableFuture<Attempt> winner,
+			final AtomicInteger pending, final long wait, final List<Future<?>> attempts) {
+		final var copy = new CurlRequest(HttpMethod.GET, request.getUrl(), null);
+		copy.setSaveResponse(true);
+		copy.getHeaders().putAll(request.getHeaders());
+		final long remaining = Deadline.remaining();
+		if (remaining < Integer.MAX_VALUE) {
+			copy.setTimeout((int) Math.min(remaining, Objects.requireNonNullElse(request.getTimeout(), Integer.MAX_VALUE)));
+		} else {
+			// No deadline, the timeout of the request is kept, even when not defined
+			copy.setTimeout(request.getTimeout());
+		}
+		try {
+			attempts.add(executor.submit(() -> {
+				var attempt = new Attempt(copy, false, 0);
+				try {
+					if (acquire(wait)) {
+						try {
+							// The latency excludes the wait for a connection
+							final long start = System.currentTimeMillis();
+							final var success = super.process(copy);
+							attempt = new Attempt(copy, success, System.currentTimeMillis() - start);
+						} finally {
+							release();
+						}
+					}
+				} finally {
+					if (attempt.success() || pending.decrementAndGet() == 0) {
+						winner.complete(attempt);
+					}
+				}
+			}));
+		} catch (final RejectedExecutionException e) {
+			if (pending.decrementAndGet() == 0) {
+				winner.complete(new Attempt(copy, false, 0));
+			}
+		}
+	}
+
+	/**
+	 * Indicate the failure is worth a retry: no response, or an overloaded node.
+	 */
+	private boolean isTransient(final CurlRequest request) {
+		return request.getStatus() == 0 || TRANSIENT_STATUS.contains(request.getStatus());
 	}
 
 }
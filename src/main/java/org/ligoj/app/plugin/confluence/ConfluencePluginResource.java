@@ -5,11 +5,13 @@ package org.ligoj.app.plugin.confluence;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import jakarta.servlet.http.HttpServletResponse;
+import jakarta.annotation.PreDestroy;
 import jakarta.ws.rs.*;
+import jakarta.ws.rs.core.CacheControl;
 import jakarta.ws.rs.core.MediaType;
-import jakarta.xml.bind.DatatypeConverter;
-import org.apache.commons.io.IOUtils;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Strings;
@@ -27,16 +29,32 @@ import org.ligoj.bootstrap.core.curl.CurlRequest;
 import org.ligoj.bootstrap.core.json.InMemoryPagination;
 import org.ligoj.bootstrap.core.security.SecurityHelper;
 import org.ligoj.bootstrap.core.validation.ValidationJsonException;
+import org.ligoj.bootstrap.resource.system.configuration.ConfigurationResource;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.text.Format;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 /**
  * Confluence KM resource.
@@ -46,15 +64,27 @@ import java.util.regex.Pattern;
 @Path(ConfluencePluginResource.URL)
 @Service
 @Produces(MediaType.APPLICATION_JSON)
+@Slf4j
 public class ConfluencePluginResource extends AbstractToolPluginResource implements KmServicePlugin {
 
 	/**
 	 * Space activity pattern for HTML markup.
 	 */
 	private static final Pattern ACTIVITY_PATTERN = Pattern.compile(
-			"logo\"\\s*src=\"([^\"]+)\".*data-username=\"([^\"]+)\"[^>]+>([^<]+)<.*href=\"([^\"]+)\"[^>]*>([^<]+)<.*update-item-date\">([^<]+)<",
+			"logo\"\\s*src=\"([^\"]+)\".*data-username=\"([^\"]+)\"[^>]+>([^<]+)<.*href=\"([^\"]+)\"[^>]*>([^<]+)<.*update-item-date\"[^>]*>([^<]+)<",
 			Pattern.DOTALL);
 
+	/**
+	 * Machine-readable activity date attribute, either an ISO date time, either a timestamp in milliseconds.
+	 */
+	private static final Pattern ACTIVITY_DATE_PATTERN = Pattern
+			.compile("update-item-date\"[^>]*\\s(?:datetime|data-timestamp)=\"([^\"]+)\"");
+
+	/**
+	 * Updated page identifier within the activity markup.
+	 */
+	private static final Pattern PAGE_ID_PATTERN = Pattern.compile("pageId=(\\d+)");
+
 	/**
 	 * Plug-in key.
 	 */
@@ -85,6 +115,65 @@ public class ConfluencePluginResource extends AbstractToolPluginResource impleme
 	 */
 	public static final String PARAMETER_PASSWORD = KEY + ":password";
 
+	/**
+	 * When <code>true</code>, the space search uses a catalog of all spaces, including the personal ones.
+	 */
+	public static final String PARAMETER_CATALOG = KEY + ":catalog";
+
+	/**
+	 * Configuration key of the time in seconds after which the space catalog of a node is built again.
+	 */
+	public static final String CONF_CATALOG_TTL = KEY + ":catalog-ttl";
+
+	/**
+	 * Configuration key prefix of the total time budget in milliseconds of an operation, followed by the operation
+	 * name: <code>status</code>, <code>space</code>, <code>activity</code>, <code>link</code>, <code>links</code> or
+	 * <code>warmup</code>.
+	 * When the budget is over, the non-essential steps such as the activity and the avatar are skipped.
+	 */
+	public static final String CONF_DEADLINE = KEY + ":deadline-";
+
+	/**
+	 * Amount of spaces per page when building a space catalog.
+	 */
+	static final int CATALOG_PAGE_SIZE = 500;
+
+	/**
+	 * Amount of recent spaces displayed in the sidebar.
+	 */
+	static final int LINKS_SIZE = 10;
+
+	/**
+	 * Amount of recent contents read to find the recent spaces of a user.
+	 */
+	private static final int LINKS_SEARCH_SIZE = 100;
+
+	/**
+	 * Amount of space keys per request when validating several spaces at once.
+	 */
+	static final int LINK_PAGE_SIZE = 50;
+
+	/**
+	 * Amount of recently updated contents per page when aggregating the node activity.
+	 */
+	private static final int ACTIVITY_PAGE_SIZE = 100;
+
+	/**
+	 * Configuration key of the time to live in seconds of the node activity aggregations.
+	 */
+	public static final String CONF_ACTIVITY_TTL = KEY + ":activity-ttl";
+
+	/**
+	 * Configuration key of the amount of days of activity to aggregate across the spaces of a node.
+	 */
+	public static final String CONF_ACTIVITY_DAYS = KEY + ":activity-days";
+
+	/**
+	 * Configuration key of the maximal amount of recently updated contents to aggregate across the spaces of a node.
+	 * Beyond this bound, the oldest contents of the period are not counted.
+	 */
+	public static final String CONF_ACTIVITY_SIZE = KEY + ":activity-size";
+
 	/**
 	 * Jackson type reference for Confluence space
 	 */
@@ -110,32 +199,42 @@ public class ConfluencePluginResource extends AbstractToolPluginResource impleme
 	@Autowired
 	private ObjectMapper objectMapper;
 
+	@Autowired
+	private AvatarStore avatarStore;
+
+	@Autowired
+	private ConfigurationResource configuration;
+
+	@Autowired
+	private ConfluenceCache cache;
+
+	@Autowired
+	private ConfluenceSessionPool sessions;
+
 	/**
-	 * Check the server is available.
+	 * Executor of the background Confluence requests, such as the prefetch of the next page of spaces.
 	 */
-	private void validateAccess(final Map<String, String> parameters) {
-		if (getVersion(parameters) == null) {
-			throw new ValidationJsonException(PARAMETER_URL, "confluence-connection");
-		}
+	private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+	/**
+	 * The nodes whose space catalog is being built.
+	 */
+	private final Set<String> building = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Stop the background Confluence requests.
+	 */
+	@PreDestroy
+	public void shutdown() {
+		executor.shutdownNow();
 	}
 
 	/**
-	 * Prepare an authenticated connection to Confluence
+	 * Check the server is available.
 	 */
-	private void authenticate(final Map<String, String> parameters, final CurlProcessor processor) {
-		final var user = parameters.get(PARAMETER_USER);
-		final var password = StringUtils.trimToEmpty(parameters.get(PARAMETER_PASSWORD));
-		final var url = Strings.CS.appendIfMissing(parameters.get(PARAMETER_URL), "/") + "dologin.action";
-		final var requests = new ArrayList<CurlRequest>();
-		requests.add(new CurlRequest(HttpMethod.GET, url, null));
-		requests.add(
-				new CurlRequest(HttpMethod.POST, url,
-						"os_username=" + user + "&os_password=" + password
-								+ "&os_destination=&atl_token=&login=Connexion",
-						ConfluenceCurlProcessor.LOGIN_CALLBACK,
-						"Accept:text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8"));
-		if (!processor.process(requests)) {
-			throw new ValidationJsonException(PARAMETER_URL, "confluence-login", parameters.get(PARAMETER_USER));
+	private void validateAccess(final Map<String, String> parameters) {
+		if (getVersion(parameters) == null) {
+			throw new ValidationJsonException(PARAMETER_URL, "confluence-connection");
 		}
 	}
 
@@ -164,73 +263,106 @@ public class ConfluencePluginResource extends AbstractToolPluginResource impleme
 	protected Space validateSpace(final Map<String, String> parameters) throws IOException {
 		final String baseUrl = Strings.CS.removeEnd(parameters.get(PARAMETER_URL), "/");
 
-		CurlRequest[] requests = null;
-
-		try {
-			// Validate the space key and get activity
-			requests = validateSpaceInternal(parameters, "/rest/api/space/",
-					"/plugins/recently-updated/changes.action?theme=social&pageSize=1&spaceKeys=");
+		try (var session = sessions.borrow(parameters)) {
+			// Validate the space key
+			final CurlProcessor processor = session.getProcessor();
+			final String json = validateSpaceInternal(parameters, processor);
 
 			// Parse the space details
-			final Map<String, Object> details = objectMapper.readValue(requests[0].getResponse(), TYPE_SPACE_REF);
+			final Map<String, Object> details = objectMapper.readValue(json, TYPE_SPACE_REF);
 
-			// Build the full space object
-			return toSpace(baseUrl, details, requests[1].getResponse(), requests[0].getProcessor());
-		} finally {
-			// Close the processor
-			closeQuietly(requests);
+			// Build the full space object, the activity is read only when not cached
+			final Space space = toSpaceLight(details);
+			space.setActivity(getActivity(ConfluenceCache.toKey(baseUrl, space.getId()),
+					k -> getActivity(baseUrl, space.getId(), processor)));
+			return space;
 		}
 	}
 
-	/**
-	 * CLose the related processor as needed.
-	 */
-	private void closeQuietly(final CurlRequest[] requests) {
-		if (requests != null) {
-			requests[0].getProcessor().close();
-		}
-
-	}
-
 	/**
 	 * Validate the space configuration and return the corresponding details.
 	 */
-	private CurlRequest[] validateSpaceInternal(final Map<String, String> parameters, final String... partialRequests) {
-		final String url = Strings.CS.removeEnd(parameters.get(PARAMETER_URL), "/");
+	private String validateSpaceInternal(final Map<String, String> parameters, final CurlProcessor processor) {
+		final String url = parameters.get(PARAMETER_URL);
 		final String space = ObjectUtils.getIfNull(parameters.get(PARAMETER_SPACE), "0");
-		final CurlRequest[] result = new CurlRequest[partialRequests.length];
-		for (int i = 0; i < partialRequests.length; i++) {
-			result[i] = new CurlRequest(HttpMethod.GET, url + partialRequests[i] + space, null);
-			result[i].setSaveResponse(true);
-		}
-
-		// Prepare the sequence of HTTP requests to Confluence
-		final ConfluenceCurlProcessor processor = new ConfluenceCurlProcessor();
-		authenticate(parameters, processor);
-
-		// Execute the requests
-		processor.process(result);
+		final String json = getConfluenceResource(processor, url, "/rest/api/space/" + space);
 
 		// Get the space if it exists
-		if (result[0].getResponse() == null) {
+		if (json == null && Deadline.isExpired()) {
+			// Unknown, the space could not be read in time
+			throw new ServiceUnavailableException();
+		}
+		if (json == null) {
 			// Invalid couple PKEY and id
 			throw new ValidationJsonException(PARAMETER_SPACE, "confluence-space", parameters.get(PARAMETER_SPACE));
 		}
-		return result;
+		return json;
 	}
 
 	@Override
-	public void link(final int subscription) {
+	public void link(final int subscription) throws IOException {
+		// Validate the space key, the existence may have been checked by a bulk link
 		final Map<String, String> parameters = subscriptionResource.getParameters(subscription);
+		try (var deadline = startDeadline("link", 15000)) {
+			getSpaceSummary(parameters);
+		}
+	}
 
-		// Validate the space key
-		CurlRequest[] requests = null;
-		try {
-			requests = validateSpaceInternal(parameters, "/rest/api/space/");
-		} finally {
-			// Close the processor
-			closeQuietly(requests);
+	/**
+	 * Validate several spaces of a node at once, before the creation of their subscriptions, for instance the ones of a
+	 * project template. The spaces are read by pages of {@value #LINK_PAGE_SIZE} keys, and the existing ones are cached,
+	 * so the link of each created subscription does not request Confluence again.
+	 *
+	 * @param node   The node of the spaces.
+	 * @param spaces The space keys.
+	 * @return The link result of each distinct space, in the requested order. Empty when the node is not visible.
+	 * @throws IOException When the spaces cannot be read.
+	 */
+	@SuppressWarnings("unchecked")
+	@POST
+	@Path("{node}/link")
+	@Consumes(MediaType.APPLICATION_JSON)
+	public List<SpaceLinkResult> linkAll(@PathParam("node") final String node, final List<String> spaces)
+			throws IOException {
+		if (!isVisible(node)) {
+			return Collections.emptyList();
 		}
+		final Map<String, String> parameters = getNodeParameters(node);
+		final String url = parameters.get(PARAMETER_URL);
+		final List<String> keys = new ArrayList<>(new LinkedHashSet<>(spaces));
+		// Confluence returns its own case of the space keys, not the requested one
+		final Map<String, SpaceLinkResult> results = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+		try (var deadline = startDeadline("link", 15000); var session = sessions.borrow(parameters)) {
+			for (int start = 0; start < keys.size(); start += LINK_PAGE_SIZE) {
+				final var page = keys.subList(start, Math.min(keys.size(), start + LINK_PAGE_SIZE));
+				final String json = getConfluenceResource(session.getProcessor(), url, "/rest/api/space?limit="
+						+ page.size() + page.stream().map(k -> "&spaceKey=" + URLEncoder.encode(k, StandardCharsets.UTF_8))
+								.collect(Collectors.joining()));
+				final var raws = json == null ? null : objectMapper.readValue(json, TYPE_SPACE_REF).get("results");
+				if (raws instanceof Collection) {
+					((Collection<Map<String, Object>>) raws).stream().map(this::toSpaceLight).forEach(space -> {
+						final var summary = toSummary(space);
+						cache.spaces.put(ConfluenceCache.toKey(url, space.getId()), summary);
+						results.put(space.getId(), toLinkResult(space.getId(), null));
+					});
+				}
+				// The missing spaces of a read page do not exist, the ones of an unread page are unknown
+				final var error = raws instanceof Collection ? "confluence-space" : "confluence-connection";
+				page.forEach(k -> results.putIfAbsent(k, toLinkResult(k, error)));
+			}
+		}
+		return keys.stream().map(results::get).toList();
+	}
+
+	/**
+	 * Build a link result.
+	 */
+	private SpaceLinkResult toLinkResult(final String space, final String error) {
+		final var result = new SpaceLinkResult();
+		result.setSpace(space);
+		result.setLinked(error == null);
+		result.setError(error);
+		return result;
 	}
 
 	/**
@@ -247,48 +379,147 @@ public class ConfluencePluginResource extends AbstractToolPluginResource impleme
 	public List<Space> findAllByName(@PathParam("node") final String node, @PathParam("criteria") final String criteria)
 			throws IOException {
 		// Check the node exists
-		if (nodeRepository.findOneVisible(node, securityHelper.getLogin()) == null) {
+		if (!isVisible(node)) {
 			return Collections.emptyList();
 		}
 
 		// Get the target node parameters
-		final Map<String, String> parameters = pvResource.getNodeParameters(node);
+		final Map<String, String> parameters = getNodeParameters(node);
 		final List<Space> result = new ArrayList<>();
-		int start = 0;
-		// Limit the result to 10, and search with a page size of 100
-		while (addAllByName(parameters, criteria, result, start) && result.size() < 10) {
-			start += 100;
+
+		// Prepare the context, an ordered set of projects
+		final Format format = new NormalizeFormat();
+		final String formatCriteria = format.format(criteria);
+
+		// Catalog mode: all spaces, including the personal ones
+		if (Boolean.parseBoolean(parameters.get(PARAMETER_CATALOG))) {
+			final var catalog = getCatalog(node, parameters);
+			if (catalog != null) {
+				return catalog.findAll(formatCriteria, 10);
+			}
+			// Only the global spaces are available until the catalog is built
+		}
+
+		// Limit the result to 10, and search with a page size of 100 within a single session
+		try (var pager = new ConfluenceSpacePager(sessions.borrow(parameters), objectMapper, executor,
+				parameters.get(PARAMETER_URL))) {
+			do {
+				addAllByName(pager.next(), format, formatCriteria, result);
+			} while (pager.hasNext() && result.size() < 10);
 		}
 
 		return inMemoryPagination.newPage(result, PageRequest.of(0, 10)).getContent();
 	}
 
 	/**
-	 * Find the spaces matching to the given criteria. Look into space key, and space name.
+	 * Indicate the given node is visible by the current user. The visibility is cached for a short time, see
+	 * {@link ConfluenceCache#CONF_NODE_TTL}, so the type-ahead does not query the database for each key stroke.
+	 *
+	 * @param node the node identifier.
+	 * @return <code>true</code> when the node is visible.
+	 * @throws IOException Never thrown, required by the cache loader.
+	 */
+	private boolean isVisible(final String node) throws IOException {
+		final String user = securityHelper.getLogin();
+		return cache.visibleNodes.get(ConfluenceCache.toKey(user, node),
+				k -> nodeRepository.findOneVisible(node, user) != null);
+	}
+
+	/**
+	 * Return the parameters of a node. The parameters are cached for a short time, see
+	 * {@link ConfluenceCache#CONF_NODE_TTL}.
+	 *
+	 * @param node the node identifier.
+	 * @return The read-only node parameters.
+	 * @throws IOException Never thrown, required by the cache loader.
+	 */
+	private Map<String, String> getNodeParameters(final String node) throws IOException {
+		return cache.nodeParameters.get(node,
+				n -> Collections.unmodifiableMap(new HashMap<>(pvResource.getNodeParameters(n))));
+	}
+
+	/**
+	 * Return the space catalog of a node, and build it in background when missing or stale.
 	 *
+	 * @param node       the node identifier.
 	 * @param parameters the node parameters.
-	 * @param criteria   the search criteria.
-	 * @param start      the cursor position.
-	 * @return <code>true</code> when there are more spaces to fetch.
-	 */
-	private boolean addAllByName(final Map<String, String> parameters, final String criteria, final List<Space> result,
-			final int start) throws IOException {
-		// The result should be JSON, otherwise, an empty result is mocked
-		final String spacesAsJson = Objects.toString(
-				getConfluenceResource(parameters, "/rest/api/space?type=global&limit=100&start=" + start),
-				"{\"results\":[],\"_links\":{}}");
-
-		// Build the result from JSON
-		final TypeReference<Map<String, Object>> typeReference = new TypeReference<>() {
-			// Nothing to override
-		};
-		final Map<String, Object> readValue = objectMapper.readValue(spacesAsJson, typeReference);
-		@SuppressWarnings("unchecked") final Collection<Map<String, Object>> spaces = (Collection<Map<String, Object>>) readValue.get("results");
+	 * @return The current catalog, may be stale. <code>null</code> when not yet built.
+	 */
+	private SpaceCatalog getCatalog(final String node, final Map<String, String> parameters) {
+		final var catalog = cache.catalogs.get(node);
+		if ((catalog == null || System.currentTimeMillis() - catalog.getBuilt() >= configuration.get(CONF_CATALOG_TTL,
+				3600) * 1000L) && building.add(node)) {
+			executor.execute(() -> {
+				try {
+					cache.catalogs.put(node, buildCatalog(parameters));
+				} catch (final Exception e) {
+					log.warn("Unable to build the Confluence space catalog of {}", node, e);
+				} finally {
+					building.remove(node);
+				}
+			});
+		}
+		return catalog;
+	}
 
-		// Prepare the context, an ordered set of projects
-		final Format format = new NormalizeFormat();
-		final String formatCriteria = format.format(criteria);
+	/**
+	 * Build the space catalog of a node within the current thread, unless it is already being built.
+	 *
+	 * @param node       the node identifier.
+	 * @param parameters the node parameters.
+	 * @throws IOException When the space content cannot be read.
+	 */
+	void refreshCatalog(final String node, final Map<String, String> parameters) throws IOException {
+		if (building.add(node)) {
+			try {
+				cache.catalogs.put(node, buildCatalog(parameters));
+			} finally {
+				building.remove(node);
+			}
+		}
+	}
+
+	/**
+	 * Return the recently active spaces of a node. The result is cached.
+	 *
+	 * @param node       the node identifier.
+	 * @param parameters the node parameters.
+	 * @return The active spaces, not ordered.
+	 * @throws IOException When the contents cannot be read.
+	 */
+	Collection<ActiveSpace> getNodeActivities(final String node, final Map<String, String> parameters)
+			throws IOException {
+		return cache.nodeActivities.get(node, n -> getActiveSpaces(parameters));
+	}
+
+	/**
+	 * Build the catalog of all spaces, including the personal ones, within a single session.
+	 *
+	 * @param parameters the node parameters.
+	 * @return The built catalog.
+	 * @throws IOException When a page of spaces cannot be read. The previous catalog, if any, should be kept.
+	 */
+	protected SpaceCatalog buildCatalog(final Map<String, String> parameters) throws IOException {
+		final Map<String, String> spaces = new HashMap<>();
+		try (var pager = new ConfluenceSpacePager(sessions.borrow(parameters), objectMapper, executor,
+				parameters.get(PARAMETER_URL), null, CATALOG_PAGE_SIZE)) {
+			while (pager.hasNext()) {
+				pager.next().forEach(s -> spaces.put((String) s.get("key"), (String) s.get("name")));
+			}
+		}
+		return new SpaceCatalog(spaces);
+	}
 
+	/**
+	 * Find the spaces matching to the given criteria. Look into space key, and space name.
+	 *
+	 * @param spaces         the raw spaces of the current page.
+	 * @param format         the normalizing format.
+	 * @param formatCriteria the normalized search criteria.
+	 * @param result         the matching spaces.
+	 */
+	private void addAllByName(final Collection<Map<String, Object>> spaces, final Format format,
+			final String formatCriteria, final List<Space> result) {
 		// Get the projects and parse them
 		for (final Map<String, Object> spaceRaw : spaces) {
 			final Space space = toSpaceLight(spaceRaw);
@@ -299,7 +530,176 @@ public class ConfluencePluginResource extends AbstractToolPluginResource impleme
 				result.add(space);
 			}
 		}
-		return ((Map<?, ?>) readValue.get("_links")).containsKey("next");
+	}
+
+	/**
+	 * Return the most active spaces of a node, based on the recently updated contents across all its spaces.
+	 *
+	 * @param node  the node to query.
+	 * @param limit the maximal amount of spaces to return, bounded by {@link #CONF_ACTIVITY_SIZE}.
+	 * @param order the ordering: <code>count</code> for the most heavily edited spaces, <code>recent</code> for the
+	 *              most recently edited spaces.
+	 * @return The most active spaces, according to the requested order.
+	 * @throws IOException When the activity cannot be read.
+	 */
+	@GET
+	@Path("activity/{node}")
+	public List<ActiveSpace> findAllActive(@PathParam("node") final String node,
+			@QueryParam("limit") @DefaultValue("10") final int limit,
+			@QueryParam("order") @DefaultValue("count") final String order) throws IOException {
+		// Check the node exists
+		if (limit <= 0 || !isVisible(node)) {
+			return Collections.emptyList();
+		}
+
+		// Ascending order, the head of the queue is the least active kept space
+		final Comparator<ActiveSpace> byCount = Comparator.comparingInt(ActiveSpace::getCount);
+		final Comparator<ActiveSpace> byRecent = Comparator.comparing(ActiveSpace::getLastUpdate,
+				Comparator.nullsFirst(Comparator.naturalOrder()));
+		final Comparator<ActiveSpace> comparator = "recent".equals(order) ? byRecent.thenComparing(byCount)
+				: byCount.thenComparing(byRecent);
+
+		// Bounded top-K selection, there cannot be more spaces than the read contents
+		final var max = Math.min(limit, configuration.get(CONF_ACTIVITY_SIZE, 1000));
+		final var top = new PriorityQueue<>(comparator);
+		for (final ActiveSpace space : cache.nodeActivities.get(node, n -> getActiveSpaces(getNodeParameters(n)))) {
+			top.add(space);
+			if (top.size() > max) {
+				top.poll();
+			}
+		}
+		final List<ActiveSpace> result = new ArrayList<>(top);
+		result.sort(comparator.reversed());
+		return result;
+	}
+
+	/**
+	 * Return the spaces recently contributed by the current user, for the global sidebar. The spaces are fetched
+	 * server-side with the node account, and cached per user, see {@link ConfluenceCache#CONF_LINKS_TTL}. The
+	 * concurrent lookups of the same user are coalesced. When the spaces cannot be read in time, no space is returned,
+	 * and this answer is neither cached by the server nor by the browser.
+	 *
+	 * @param node the node to query.
+	 * @return The recent spaces, most recent first.
+	 * @throws IOException When the node cannot be read.
+	 */
+	@GET
+	@Path("links/{node}")
+	public Response findAllLinks(@PathParam("node") final String node) throws IOException {
+		final var user = securityHelper.getLogin();
+		final CacheControl cacheControl = new CacheControl();
+		cacheControl.setPrivate(true);
+		cacheControl.setMaxAge(configuration.get(ConfluenceCache.CONF_LINKS_TTL, 60));
+		List<SpaceLink> links = Collections.emptyList();
+		if (isVisible(node)) {
+			final Map<String, String> parameters = getNodeParameters(node);
+			try (var deadline = startDeadline("links", 5000)) {
+				links = cache.links.get(ConfluenceCache.toKey(node, user), k -> getLinks(parameters, user));
+			} catch (final IOException | ServiceUnavailableException e) {
+				// The sidebar stays available, the next lookup reads the spaces again
+				log.info("Unable to read the Confluence spaces of {} from {}", user, node, e);
+				cacheControl.setNoStore(true);
+			}
+		}
+		return Response.ok(links, MediaType.APPLICATION_JSON).cacheControl(cacheControl).build();
+	}
+
+	/**
+	 * Return the spaces recently contributed by a user, from the contents they modified.
+	 *
+	 * @throws IOException When the contents cannot be read, so no link list is cached.
+	 */
+	@SuppressWarnings("unchecked")
+	private List<SpaceLink> getLinks(final Map<String, String> parameters, final String user) throws IOException {
+		final String url = Strings.CS.removeEnd(parameters.get(PARAMETER_URL), "/");
+		final String cql = "contributor = \"" + user.replace("\"", "") + "\" order by lastmodified desc";
+		final String json;
+		try (var session = sessions.borrow(parameters)) {
+			json = getConfluenceResource(session.getProcessor(), url, "/rest/api/content/search?cql="
+					+ URLEncoder.encode(cql, StandardCharsets.UTF_8) + "&limit=" + LINKS_SEARCH_SIZE + "&expand=space");
+		}
+		if (json == null) {
+			throw new IOException("Unable to read the Confluence contributions of " + user);
+		}
+		final Map<String, Object> contents = objectMapper.readValue(json, TYPE_SPACE_REF);
+
+		// Distinct spaces, in the order of the most recent contribution
+		final Map<String, SpaceLink> links = new LinkedHashMap<>();
+		for (final Map<String, Object> content : (Collection<Map<String, Object>>) contents.get("results")) {
+			final var space = (Map<String, Object>) content.get("space");
+			if (space != null && links.size() < LINKS_SIZE) {
+				links.computeIfAbsent((String) space.get("key"), k -> {
+					final var link = new SpaceLink();
+					link.setId(k);
+					link.setName((String) space.get("name"));
+					link.setUrl(url + "/display/" + URLEncoder.encode(k, StandardCharsets.UTF_8));
+					return link;
+				});
+			}
+		}
+		return new ArrayList<>(links.values());
+	}
+
+	/**
+	 * Aggregate the recently updated contents across all spaces with a CQL query, following its pages until the
+	 * configured maximal amount of contents.
+	 *
+	 * @param parameters the node parameters.
+	 * @return The spaces having a recent activity.
+	 * @throws IOException When the activity cannot be read.
+	 */
+	@SuppressWarnings("unchecked")
+	private Collection<ActiveSpace> getActiveSpaces(final Map<String, String> parameters) throws IOException {
+		final String cql = "lastmodified >= now(\"-" + configuration.get(CONF_ACTIVITY_DAYS, 7)
+				+ "d\") order by lastmodified desc";
+		final var max = configuration.get(CONF_ACTIVITY_SIZE, 1000);
+		final Map<String, ActiveSpace> spaces = new HashMap<>();
+		try (var session = sessions.borrow(parameters)) {
+			var next = "/rest/api/content/search?cql=" + URLEncoder.encode(cql, StandardCharsets.UTF_8) + "&limit="
+					+ ACTIVITY_PAGE_SIZE + "&expand=space,version";
+			var read = 0;
+			while (next != null && read < max) {
+				final Map<String, Object> contents = objectMapper.readValue(StringUtils.defaultIfEmpty(
+						getConfluenceResource(session.getProcessor(), parameters.get(PARAMETER_URL), next),
+						"{\"results\":[]}"), TYPE_SPACE_REF);
+				final var results = (Collection<Map<String, Object>>) contents.get("results");
+				results.forEach(c -> addActivity(parameters, spaces, c));
+				read += results.size();
+
+				// The next link is relative to the base URL, and holds the cursor of the next page
+				final var links = (Map<String, Object>) contents.getOrDefault("_links", Collections.emptyMap());
+				next = results.isEmpty() ? null : (String) links.get("next");
+			}
+		}
+		return spaces.values();
+	}
+
+	/**
+	 * Aggregate a recently updated content to the activity of its space.
+	 */
+	@SuppressWarnings("unchecked")
+	private void addActivity(final Map<String, String> parameters, final Map<String, ActiveSpace> spaces,
+			final Map<String, Object> content) {
+		final var spaceRaw = (Map<String, Object>) content.get("space");
+		if (spaceRaw == null) {
+			return;
+		}
+		final var space = spaces.computeIfAbsent((String) spaceRaw.get("key"), k -> {
+			final var light = toSpaceLight(spaceRaw);
+			final var active = new ActiveSpace();
+			active.setId(light.getId());
+			active.setName(light.getName());
+			return active;
+		});
+		space.setCount(space.getCount() + 1);
+		final var version = (Map<String, Object>) content.get("version");
+		final var when = version == null ? null : parseTimestamp((String) version.get("when"));
+		if (when != null) {
+			cache.history.record(ConfluenceCache.toKey(parameters.get(PARAMETER_URL), space.getId()), when, false);
+			if (space.getLastUpdate() == null || when.isAfter(space.getLastUpdate())) {
+				space.setLastUpdate(when);
+			}
+		}
 	}
 
 	/**
@@ -313,45 +713,314 @@ public class ConfluencePluginResource extends AbstractToolPluginResource impleme
 	}
 
 	/**
-	 * Map API JSON Space and history values to a bean.
+	 * Return the last activity of a space from the recently updated contents.
+	 *
+	 * @param baseUrl   The Confluence base URL.
+	 * @param space     The space key.
+	 * @param processor The authenticated processor.
+	 * @return The last activity, or <code>null</code> when there is no activity.
+	 */
+	private SpaceActivity getActivity(final String baseUrl, final String space, final CurlProcessor processor) {
+		final String history = getConfluenceResource(processor, baseUrl,
+				"/plugins/recently-updated/changes.action?theme=social&pageSize=1&spaceKeys=" + space);
+		return toActivity(baseUrl, StringUtils.defaultString(history), processor);
+	}
+
+	/**
+	 * Map the activity markup to a bean.
 	 */
-	private Space toSpace(final String baseUrl, final Map<String, Object> spaceRaw, final String history,
-			final CurlProcessor processor) {
-		final Space space = toSpaceLight(spaceRaw);
+	private SpaceActivity toActivity(final String baseUrl, final String history, final CurlProcessor processor) {
 		final String hostUrl = Strings.CS.removeEnd(baseUrl, URI.create(baseUrl).getPath());
 
 		// Check the activity if available
-		final Matcher matcher = ACTIVITY_PATTERN.matcher(StringUtils.defaultString(history));
+		final Matcher matcher = ACTIVITY_PATTERN.matcher(history);
 		if (matcher.find()) {
 			// Activity has been found
 			final SpaceActivity activity = new SpaceActivity();
-			getAvatar(processor, activity, hostUrl + matcher.group(1));
 			activity.setAuthor(toSimpleUser(matcher.group(2), matcher.group(3)));
+			if (!Deadline.isExpired()) {
+				// Non-essential, skipped when there is no time left
+				getAvatar(processor, activity, hostUrl + matcher.group(1));
+			}
 			activity.setPageUrl(hostUrl + matcher.group(4));
 			activity.setPage(matcher.group(5));
 			activity.setMoment(matcher.group(6));
-			space.setActivity(activity);
+			activity.setTimestamp(toTimestamp(processor, baseUrl, history, matcher.start(4)));
+			return activity;
 		}
-		return space;
+		return null;
 	}
 
 	/**
-	 * Return the avatar PNG file from URL.
+	 * Resolve the absolute moment of an activity: from the machine-readable attribute of the markup when available,
+	 * otherwise from the version of the updated page.
+	 *
+	 * @param processor The authenticated processor.
+	 * @param baseUrl   The Confluence base URL.
+	 * @param history   The activity markup.
+	 * @param from      The position of the updated page within the markup.
+	 * @return The activity moment, or <code>null</code> when it cannot be resolved.
+	 */
+	private Instant toTimestamp(final CurlProcessor processor, final String baseUrl, final String history,
+			final int from) {
+		final Matcher dateMatcher = ACTIVITY_DATE_PATTERN.matcher(history);
+		if (dateMatcher.find(from)) {
+			return parseTimestamp(dateMatcher.group(1));
+		}
+		final Matcher pageMatcher = PAGE_ID_PATTERN.matcher(history);
+		if (!Deadline.isExpired() && pageMatcher.find(from)) {
+			// Use the REST content history
+			final String content = getConfluenceResource(processor, baseUrl,
+					"/rest/api/content/" + pageMatcher.group(1) + "?expand=version");
+			try {
+				final Map<String, Object> details = objectMapper.readValue(StringUtils.defaultIfEmpty(content, "{}"),
+						TYPE_SPACE_REF);
+				final var version = (Map<?, ?>) details.get("version");
+				return version == null ? null : parseTimestamp((String) version.get("when"));
+			} catch (final IOException e) {
+				// Best effort, the display moment is still available
+				return null;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Parse a date as produced by Confluence: an ISO date time with an offset, or a timestamp in milliseconds.
+	 *
+	 * @param date The date to parse. May be <code>null</code>.
+	 * @return The parsed date, or <code>null</code> when the date is not valid.
+	 */
+	protected Instant parseTimestamp(final String date) {
+		try {
+			if (StringUtils.isNumeric(date)) {
+				return Instant.ofEpochMilli(Long.parseLong(date));
+			}
+			return date == null ? null : OffsetDateTime.parse(date).toInstant();
+		} catch (final NumberFormatException | DateTimeParseException e) {
+			// Not a valid date
+			return null;
+		}
+	}
+
+	/**
+	 * Resolve the avatar thumbnail from URL.
 	 */
 	private void getAvatar(final CurlProcessor processor, final SpaceActivity activity, final String avatarUrl) {
 		if (!avatarUrl.endsWith("/default.png")) {
-			// Not default URL, get the PNG bytes
-			processor.process(new CurlRequest("GET", avatarUrl, null, (req, res) -> {
-				// PNG to DATA URL
-				if (res.getCode() == HttpServletResponse.SC_OK) {
-					activity.setAuthorAvatar("data:image/png;base64,"
-							+ DatatypeConverter.printBase64Binary(IOUtils.toByteArray(res.getEntity().getContent())));
+			// Not default URL, get the thumbnail
+			activity.setAvatar(avatarStore.resolve(processor, avatarUrl, activity.getAuthor().getId()));
+			activity.setAuthorAvatar(activity.getAvatar() == null ? null : avatarStore.toDataUrl(activity.getAvatar()));
+		}
+	}
+
+	/**
+	 * Return the compact projection of a space, as sent within the subscription status.
+	 *
+	 * @param space The full space.
+	 * @return The compact space.
+	 */
+	protected SpaceSummary toSummary(final Space space) {
+		final SpaceSummary summary = new SpaceSummary();
+		summary.setId(space.getId());
+		summary.setName(space.getName());
+		summary.setActivity(toSummary(space.getActivity()));
+		return summary;
+	}
+
+	/**
+	 * Return the compact projection of an activity.
+	 *
+	 * @param activity The full activity. May be <code>null</code>.
+	 * @return The compact activity, or <code>null</code> when there is no activity.
+	 */
+	protected SpaceActivitySummary toSummary(final SpaceActivity activity) {
+		if (activity == null) {
+			return null;
+		}
+		final SpaceActivitySummary summary = new SpaceActivitySummary();
+		summary.setAuthor(activity.getAuthor().getId());
+		summary.setAuthorName(StringUtils.trimToNull(
+				StringUtils.joinWith(" ", activity.getAuthor().getFirstName(), activity.getAuthor().getLastName())));
+		summary.setAvatar(activity.getAvatar());
+		summary.setMoment(activity.getMoment());
+		summary.setTimestamp(activity.getTimestamp());
+		summary.setPage(activity.getPage());
+		summary.setPageUrl(activity.getPageUrl());
+		return summary;
+	}
+
+	/**
+	 * Return the space of the given parameters, without its activity. Only the existence of the space is checked, and
+	 * the result is cached.
+	 *
+	 * @param parameters the space parameters.
+	 * @return The space without activity.
+	 * @throws IOException When the space content cannot be read.
+	 */
+	protected SpaceSummary getSpaceSummary(final Map<String, String> parameters) throws IOException {
+		final String space = ObjectUtils.getIfNull(parameters.get(PARAMETER_SPACE), "0");
+		return cache.spaces.get(ConfluenceCache.toKey(parameters.get(PARAMETER_URL), space), k -> {
+			try (var session = sessions.borrow(parameters)) {
+				final String json = validateSpaceInternal(parameters, session.getProcessor());
+				return toSummary(toSpaceLight(objectMapper.readValue(json, TYPE_SPACE_REF)));
+			}
+		});
+	}
+
+	/**
+	 * Return the last activity of the space of the given parameters. The result is cached.
+	 *
+	 * @param parameters the space parameters.
+	 * @return The last activity, or <code>null</code> when there is no activity.
+	 * @throws IOException When the activity cannot be read.
+	 */
+	protected SpaceActivity getActivity(final Map<String, String> parameters) throws IOException {
+		final String baseUrl = Strings.CS.removeEnd(parameters.get(PARAMETER_URL), "/");
+		final String space = parameters.get(PARAMETER_SPACE);
+		return getActivity(ConfluenceCache.toKey(baseUrl, space), k -> {
+			try (var session = sessions.borrow(parameters)) {
+				final var activity = getActivity(baseUrl, space, session.getProcessor());
+				if (activity != null && activity.getTimestamp() != null) {
+					cache.history.record(k, activity.getTimestamp(), false);
 				}
-				return true;
-			}));
+				return activity;
+			}
+		});
+	}
+
+	/**
+	 * Return the cached activity of a space, or load it within the current deadline. When the deadline is over, only
+	 * the cached activity is returned, and a partial activity is not cached.
+	 *
+	 * @param key    The space key, see {@link ConfluenceCache#toKey(String, String)}.
+	 * @param loader The activity loader.
+	 * @return The last activity, or <code>null</code> when there is no activity or no time left.
+	 * @throws IOException When the activity cannot be read.
+	 */
+	private SpaceActivity getActivity(final String key, final TimedCache.Loader<String, SpaceActivity> loader)
+			throws IOException {
+		if (Deadline.isExpired()) {
+			return Optional.ofNullable(cache.activities.getIfPresent(key)).flatMap(a -> a).orElse(null);
+		}
+		final var activity = cache.activities.get(key, k -> Optional.ofNullable(loader.load(k)));
+		if (Deadline.isExpired()) {
+			// Partial result, not kept
+			cache.activities.evict(key);
+		}
+		return activity.orElse(null);
+	}
+
+	/**
+	 * Return the last activity of the space linked to a subscription. This is the deferred enrichment of the
+	 * subscription status, which only checks the existence of the space.
+	 *
+	 * @param subscription The subscription identifier.
+	 * @return The compact activity, or no content when there is no activity.
+	 * @throws IOException When the activity cannot be read.
+	 */
+	@GET
+	@Path("space/{subscription:\\d+}/activity")
+	public SpaceActivitySummary getSpaceActivity(@PathParam("subscription") final int subscription)
+			throws IOException {
+		final Map<String, String> parameters = subscriptionResource.getParameters(subscription);
+		try (var deadline = startDeadline("activity", 10000)) {
+			return toSummary(getActivity(parameters));
+		}
+	}
+
+	/**
+	 * Return the edit counts of the spaces linked to several subscriptions, from the recorded history only. The edits
+	 * are recorded from the webhook events, the activities, the node activities and the page indexing, and counted by
+	 * UTC day, see {@link ConfluenceCache#CONF_HISTORY_DAYS}.
+	 *
+	 * @param subscriptions The subscription identifiers.
+	 * @param from          The first day as an ISO-8601 date, inclusive. Default is 89 days before the last day.
+	 * @param to            The last day as an ISO-8601 date, inclusive. Default is the current day.
+	 * @param step          The amount of days of each bucket, for instance <code>7</code> for weekly counts.
+	 * @return The edit counts of each distinct subscription, in the requested order.
+	 */
+	@GET
+	@Path("history")
+	public List<SpaceHistory> findAllHistory(@QueryParam("subscription") final List<Integer> subscriptions,
+			@QueryParam("from") final String from, @QueryParam("to") final String to,
+			@DefaultValue("1") @QueryParam("step") final int step) {
+		final var last = to == null ? LocalDate.now(ZoneOffset.UTC) : parseDate("to", to);
+		final var first = from == null ? last.minusDays(89) : parseDate("from", from);
+		final var days = last.toEpochDay() - first.toEpochDay() + 1;
+		if (days <= 0 || days > configuration.get(ConfluenceCache.CONF_HISTORY_DAYS, 400)) {
+			throw new ValidationJsonException("from", "history-range", days);
+		}
+		if (step <= 0 || step > days) {
+			throw new ValidationJsonException("step", "history-step", step);
+		}
+		return new LinkedHashSet<>(subscriptions).stream().map(id -> {
+			final Map<String, String> parameters = subscriptionResource.getParameters(id);
+			final var key = ConfluenceCache.toKey(parameters.get(PARAMETER_URL), parameters.get(PARAMETER_SPACE));
+			final var daily = cache.history.getCounts(key, first, last);
+			final var history = new SpaceHistory();
+			history.setSubscription(id);
+			history.setSpace(parameters.get(PARAMETER_SPACE));
+			history.setFrom(first);
+			history.setStep(step);
+			history.setCounts(new int[(daily.length + step - 1) / step]);
+			for (var i = 0; i < daily.length; i++) {
+				history.getCounts()[i / step] += daily[i];
+			}
+			history.setTotal(Arrays.stream(daily).sum());
+			history.setLastActive(cache.history.getLastActive(key));
+			return history;
+		}).toList();
+	}
+
+	/**
+	 * Parse an ISO-8601 date.
+	 */
+	private LocalDate parseDate(final String property, final String date) {
+		try {
+			return LocalDate.parse(date);
+		} catch (final DateTimeParseException e) {
+			throw new ValidationJsonException(property, "date", date);
+		}
+	}
+
+	/**
+	 * Return the full details of the space linked to a subscription, including the activity author and the inlined
+	 * avatar.
+	 *
+	 * @param subscription The subscription identifier.
+	 * @return Space's details.
+	 * @throws IOException When the space content cannot be read.
+	 */
+	@GET
+	@Path("space/{subscription:\\d+}")
+	public Space getSpace(@PathParam("subscription") final int subscription) throws IOException {
+		final Map<String, String> parameters = subscriptionResource.getParameters(subscription);
+		try (var deadline = startDeadline("space", 15000)) {
+			return validateSpace(parameters);
 		}
 	}
 
+	/**
+	 * Return an avatar previously resolved from a space activity.
+	 *
+	 * @param id The avatar reference.
+	 * @return The PNG image.
+	 */
+	@GET
+	@Path("avatar/{id}")
+	@Produces("image/png")
+	public Response getAvatar(@PathParam("id") final String id) {
+		final byte[] image = avatarStore.get(id);
+		if (image == null) {
+			return Response.status(Response.Status.NOT_FOUND).build();
+		}
+		final CacheControl cacheControl = new CacheControl();
+		cacheControl.setPrivate(true);
+		cacheControl.setMaxAge(3600);
+		return Response.ok(image).cacheControl(cacheControl).build();
+	}
+
 	/**
 	 * Search the given username using IAM, and if not found use the resolved Confluence display name.
 	 *
@@ -384,32 +1053,25 @@ public class ConfluencePluginResource extends AbstractToolPluginResource impleme
 	}
 
 	/**
-	 * Return a Confluence's resource. Return <code>null</code> when the resource is not found.
+	 * Return a Confluence's resource within the current deadline. Return <code>null</code> when the resource is not
+	 * found.
 	 */
 	private String getConfluencePublicResource(final Map<String, String> parameters, final String resource) {
-		return getConfluenceResource(new CurlProcessor(), parameters.get(PARAMETER_URL), resource);
-	}
-
-	/**
-	 * Return a Confluence's resource after an authentication. Return <code>null</code> when the resource is not found.
-	 */
-	private String getConfluenceResource(final Map<String, String> parameters, final String resource) {
-		final ConfluenceCurlProcessor processor = new ConfluenceCurlProcessor();
-		authenticate(parameters, processor);
-		return getConfluenceResource(processor, parameters.get(PARAMETER_URL), resource);
+		try (CurlProcessor processor = new ConfluenceCurlProcessor()) {
+			return getConfluenceResource(processor, parameters.get(PARAMETER_URL), resource);
+		}
 	}
 
 	/**
-	 * Return a Jenkins's resource. Return <code>null</code> when the resource is not found.
+	 * Return a Confluence's resource without closing the processor. Return <code>null</code> when the resource is not
+	 * found.
 	 */
 	private String getConfluenceResource(final CurlProcessor processor, final String url, final String resource) {
 		// Get the resource using the preempted authentication
-		final CurlRequest request = new CurlRequest(HttpMethod.GET, Strings.CS.removeEnd(url, "/") + resource, null);
-		request.setSaveResponse(true);
+		final CurlRequest request = ConfluenceCurlProcessor.newGet(Strings.CS.removeEnd(url, "/") + resource);
 
 		// Execute the requests
 		processor.process(request);
-		processor.close();
 		return request.getResponse();
 	}
 
@@ -441,7 +1103,7 @@ public class ConfluencePluginResource extends AbstractToolPluginResource impleme
 
 		try (CurlProcessor processor = new ConfluenceCurlProcessor()) {
 			// Check the user can log in to Confluence
-			authenticate(parameters, processor);
+			sessions.authenticate(parameters, processor);
 
 			// Check the user has enough rights to access to the plugin page
 			validateAdminAccess(parameters, processor);
@@ -452,7 +1114,115 @@ public class ConfluencePluginResource extends AbstractToolPluginResource impleme
 	@Override
 	public SubscriptionStatusWithData checkSubscriptionStatus(final Map<String, String> parameters) throws IOException {
 		final SubscriptionStatusWithData data = new SubscriptionStatusWithData();
-		data.put("space", validateSpace(parameters));
+		// Only the existence of the space, the activity is available from "space/{subscription}/activity"
+		try (var deadline = startDeadline("status", 5000)) {
+			data.put("space", getSpaceSummary(parameters));
+		}
 		return data;
 	}
+
+	/**
+	 * Stream the status of several subscriptions as server-sent events, in the order they are resolved. Each
+	 * subscription produces a <code>status</code> event with the cached space existence, without its activity, and the
+	 * stream ends with a <code>summary</code> event unless interrupted. The concurrent checks of the same Confluence
+	 * node are bounded, see {@link ConfluenceSessionPool#CONF_MAX_CONNECTIONS}, and the deadline of a check starts
+	 * once its turn has come.
+	 *
+	 * @param subscriptions The subscription identifiers.
+	 * @return The event stream.
+	 */
+	@GET
+	@Path("status")
+	@Produces(MediaType.SERVER_SENT_EVENTS)
+	public StreamingOutput streamStatus(@QueryParam("subscription") final List<Integer> subscriptions) {
+		final long start = System.currentTimeMillis();
+
+		// Resolve the parameters within the request thread, where the visibility is checked
+		final Map<Integer, Map<String, String>> parameters = new LinkedHashMap<>();
+		final List<SpaceStatusEvent> rejected = new ArrayList<>();
+		new LinkedHashSet<>(subscriptions).forEach(id -> {
+			try {
+				parameters.put(id, subscriptionResource.getParameters(id));
+			} catch (final RuntimeException e) {
+				rejected.add(toStatusEvent(id, null, e));
+			}
+		});
+
+		return output -> {
+			final var events = new LinkedBlockingQueue<SpaceStatusEvent>(rejected);
+			final var tasks = new ArrayList<Future<?>>();
+			final var gates = new HashMap<String, Semaphore>();
+			parameters.forEach((id, p) -> {
+				// The checks of a node wait for their turn before their deadline starts, not within it
+				final var gate = gates.computeIfAbsent(Strings.CS.removeEnd(p.get(PARAMETER_URL), "/"),
+						u -> new Semaphore(Math.max(1, configuration.get(ConfluenceSessionPool.CONF_MAX_CONNECTIONS, 5))));
+				tasks.add(executor.submit(() -> {
+					try {
+						gate.acquire();
+					} catch (final InterruptedException e) {
+						Thread.currentThread().interrupt();
+						return;
+					}
+					try (var deadline = startDeadline("status", 5000)) {
+						events.add(toStatusEvent(id, getSpaceSummary(p), null));
+					} catch (final Exception e) {
+						events.add(toStatusEvent(id, null, e));
+					} finally {
+						gate.release();
+					}
+				}));
+			});
+
+			final int total = rejected.size() + tasks.size();
+			int up = 0;
+			try {
+				for (int i = 0; i < total; i++) {
+					final var event = events.take();
+					up += event.isUp() ? 1 : 0;
+					writeEvent(output, "status", event);
+				}
+			} catch (final InterruptedException e) {
+				// The stream is abandoned, there is no summary
+				Thread.currentThread().interrupt();
+				return;
+			} finally {
+				// The client may have gone, the pending checks are interrupted, and so their blocking requests
+				tasks.forEach(t -> t.cancel(true));
+			}
+			writeEvent(output, "summary", Map.of("total", total, "up", up, "down", total - up, "duration",
+					System.currentTimeMillis() - start));
+		};
+	}
+
+	/**
+	 * Start the deadline of an operation, see {@link #CONF_DEADLINE}.
+	 *
+	 * @param operation The operation name.
+	 * @param budget    The default time budget in milliseconds.
+	 * @return The started deadline, to be closed once the operation is done.
+	 */
+	private Deadline startDeadline(final String operation, final int budget) {
+		return Deadline.start(configuration.get(CONF_DEADLINE + operation, budget));
+	}
+
+	/**
+	 * Build a status event.
+	 */
+	private SpaceStatusEvent toStatusEvent(final int subscription, final SpaceSummary space, final Exception error) {
+		final var event = new SpaceStatusEvent();
+		event.setSubscription(subscription);
+		event.setUp(space != null);
+		event.setSpace(space);
+		event.setError(error == null ? null : error.getMessage());
+		return event;
+	}
+
+	/**
+	 * Write and flush a server-sent event.
+	 */
+	private void writeEvent(final OutputStream output, final String name, final Object data) throws IOException {
+		output.write(("event: " + name + "\ndata: " + objectMapper.writeValueAsString(data) + "\n\n")
+				.getBytes(StandardCharsets.UTF_8));
+		output.flush();
+	}
 }
@@ -0,0 +1,336 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.confluence;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Strings;
+import org.ligoj.app.dao.ParameterValueRepository;
+import org.ligoj.app.dao.ProjectRepository;
+import org.ligoj.app.model.Project;
+import org.ligoj.app.resource.node.ParameterValueResource;
+import org.ligoj.bootstrap.core.curl.CurlProcessor;
+import org.ligoj.bootstrap.core.security.SecurityHelper;
+import org.ligoj.bootstrap.resource.system.configuration.ConfigurationResource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.ws.rs.DefaultValue;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.MediaType;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Search of the pages of the subscribed Confluence spaces. The page titles and labels are kept in a local index, so the
+ * search does not wait for Confluence. The stale spaces are indexed in background by delta, and the page removals are
+ * received from the webhook, see {@link ConfluenceWebhookResource}.
+ */
+@Path(ConfluencePluginResource.URL + "/page")
+@Service
+@Produces(MediaType.APPLICATION_JSON)
+@Slf4j
+public class ConfluenceSearchResource {
+
+	/**
+	 * Configuration key of the time in seconds after which a space is indexed again.
+	 */
+	public static final String CONF_INDEX_TTL = ConfluencePluginResource.KEY + ":index-ttl";
+
+	/**
+	 * Configuration key of the maximal amount of spaces waiting for their indexing, per Confluence node. Read when the
+	 * queue of this node is created.
+	 */
+	public static final String CONF_INDEX_QUEUE = ConfluencePluginResource.KEY + ":index-queue";
+
+	/**
+	 * Amount of pages per request.
+	 */
+	static final int PAGE_SIZE = 100;
+
+	/**
+	 * Date format of the CQL delta query. The day granularity also covers the time zone of the server.
+	 */
+	private static final DateTimeFormatter CQL_DATE = DateTimeFormatter.ofPattern("yyyy-MM-dd")
+			.withZone(ZoneOffset.UTC);
+
+	/**
+	 * Jackson type reference for a page of Confluence contents
+	 */
+	private static final TypeReference<Map<String, Object>> TYPE_PAGE_REF = new TypeReference<>() {
+		// Nothing to override
+	};
+
+	/**
+	 * A subscribed space.
+	 *
+	 * @param subscription The subscription identifier.
+	 * @param project      The project identifier of the subscription.
+	 * @param space        The indexed space, see {@link ConfluenceCache#toKey(String, String)}.
+	 * @param parameters   The subscription parameters.
+	 */
+	record Target(int subscription, int project, String space, Map<String, String> parameters) {
+	}
+
+	@Autowired
+	private ParameterValueRepository parameterValueRepository;
+
+	@Autowired
+	private ParameterValueResource pvResource;
+
+	@Autowired
+	private ProjectRepository projectRepository;
+
+	@Autowired
+	private SecurityHelper securityHelper;
+
+	@Autowired
+	private ConfigurationResource configuration;
+
+	@Autowired
+	private ConfluencePluginResource resource;
+
+	@Autowired
+	private ConfluenceSessionPool sessions;
+
+	@Autowired
+	private ConfluenceCache cache;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	/**
+	 * Indexing queues, by Confluence URL. The spaces of a node are indexed one at a time, so the indexing holds at most
+	 * a single connection of this node, and the interactive requests get the other ones.
+	 */
+	private final Map<String, ExecutorService> queues = new ConcurrentHashMap<>();
+
+	/**
+	 * The spaces being indexed.
+	 */
+	private final Set<String> indexing = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Stop the background indexing.
+	 */
+	@PreDestroy
+	public void shutdown() {
+		queues.values().forEach(ExecutorService::shutdownNow);
+	}
+
+	/**
+	 * Return the indexed pages matching the query, within the spaces subscribed by the projects visible by the current
+	 * user. The stale visible spaces are queued for a background indexing, so the answer only relies on the current
+	 * index. A blank query neither searches nor indexes.
+	 *
+	 * @param query The query. The last term matches as a prefix.
+	 * @param limit The maximal amount of pages to return.
+	 * @return The matching pages, the most recently modified first.
+	 * @throws IOException When the subscriptions cannot be read.
+	 */
+	@GET
+	@Path("search")
+	public List<IndexedPage> search(@QueryParam("q") final String query,
+			@DefaultValue("20") @QueryParam("limit") final int limit) throws IOException {
+		if (StringUtils.isBlank(query)) {
+			// Nothing to search, nor to index
+			return List.of();
+		}
+		final var visible = getVisibleTargets();
+		final var now = System.currentTimeMillis();
+		final var ttl = configuration.get(CONF_INDEX_TTL, 600) * 1000L;
+
+		// The least recently indexed spaces first, within the capacity of the queue of their node
+		visible.values().stream().filter(t -> now - cache.pages.getRefreshed(t.space()) >= ttl)
+				.sorted(Comparator.comparingLong(t -> cache.pages.getRefreshed(t.space()))).forEach(this::indexAsync);
+		return cache.pages.search(query, e -> visible.containsKey(e.space()), limit).stream()
+				.map(e -> toPage(e, visible.get(e.space()))).toList();
+	}
+
+	/**
+	 * Return the subscribed spaces visible by the current user, by indexed space.
+	 */
+	private Map<String, Target> getVisibleTargets() throws IOException {
+		final var projects = projectRepository.findAllLight(securityHelper.getLogin(), "", Pageable.unpaged())
+				.getContent().stream().map(r -> ((Project) r[0]).getId()).collect(Collectors.toSet());
+		final var visible = new HashMap<String, Target>();
+		for (final var target : cache.subscriptions.get("", k -> getTargets())) {
+			if (projects.contains(target.project())) {
+				visible.putIfAbsent(target.space(), target);
+			}
+		}
+		return visible;
+	}
+
+	/**
+	 * Return all subscribed Confluence spaces, from their space parameter values. The parameters of each node are read
+	 * once.
+	 */
+	private Collection<Target> getTargets() {
+		final var nodes = new HashMap<String, Map<String, String>>();
+		return parameterValueRepository.findAllBy("parameter.id", ConfluencePluginResource.PARAMETER_SPACE).stream()
+				.filter(v -> v.getSubscription() != null).map(v -> {
+					final var subscription = v.getSubscription();
+					final var parameters = new HashMap<>(
+							nodes.computeIfAbsent(subscription.getNode().getId(), pvResource::getNodeParameters));
+					parameters.put(ConfluencePluginResource.PARAMETER_SPACE, v.getData());
+					return new Target(subscription.getId(), subscription.getProject().getId(),
+							ConfluenceCache.toKey(parameters.get(ConfluencePluginResource.PARAMETER_URL),
+									v.getData()),
+							parameters);
+				}).toList();
+	}
+
+	private IndexedPage toPage(final PageIndex.Entry entry, final Target target) {
+		final var page = new IndexedPage();
+		page.setId(entry.id());
+		page.setName(entry.title());
+		page.setSpace(target.parameters().get(ConfluencePluginResource.PARAMETER_SPACE));
+		page.setSubscription(target.subscription());
+		page.setLabels(entry.labels());
+		page.setLastModified(entry.lastModified());
+		page.setUrl(entry.url());
+		return page;
+	}
+
+	/**
+	 * Queue the indexing of a space, unless it is already queued or the queue of its node is full.
+	 */
+	private void indexAsync(final Target target) {
+		if (indexing.add(target.space())) {
+			try {
+				getQueue(target.parameters()).execute(() -> {
+					try {
+						index(target.parameters());
+					} catch (final Exception e) {
+						log.warn("Unable to index the Confluence space {}", target.space(), e);
+					} finally {
+						indexing.remove(target.space());
+					}
+				});
+			} catch (final RejectedExecutionException e) {
+				// The queue is full or stopped, the space is queued by a next search
+				indexing.remove(target.space());
+			}
+		}
+	}
+
+	/**
+	 * Return the indexing queue of the Confluence node of the given parameters: a single worker and a bounded queue.
+	 */
+	private ExecutorService getQueue(final Map<String, String> parameters) {
+		return queues.computeIfAbsent(
+				Strings.CS.removeEnd(parameters.get(ConfluencePluginResource.PARAMETER_URL), "/"),
+				u -> new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+						new LinkedBlockingQueue<>(Math.max(1, configuration.get(CONF_INDEX_QUEUE, 100))),
+						Thread.ofVirtual().name("confluence-index").factory()));
+	}
+
+	/**
+	 * Index the pages of a space. The first indexing walks all pages of the space, the next ones only fetch the pages
+	 * modified since the last indexed modification. The pages are indexed once all of them are read, so a failed walk
+	 * does not move the last indexed modification.
+	 *
+	 * @param parameters The subscription parameters.
+	 * @throws IOException When a page of contents cannot be read.
+	 */
+	@SuppressWarnings("unchecked")
+	protected void index(final Map<String, String> parameters) throws IOException {
+		final var url = Strings.CS.removeEnd(parameters.get(ConfluencePluginResource.PARAMETER_URL), "/");
+		final var spaceKey = parameters.get(ConfluencePluginResource.PARAMETER_SPACE);
+		final var space = ConfluenceCache.toKey(url, spaceKey);
+		final var started = System.currentTimeMillis();
+		final var since = cache.pages.getSince(space);
+		final String contents;
+		if (since == null) {
+			contents = "/rest/api/content?type=page&spaceKey=" + URLEncoder.encode(spaceKey, StandardCharsets.UTF_8);
+		} else {
+			final var cql = "space=\"" + spaceKey + "\" and type=page and lastmodified >= \""
+					+ CQL_DATE.format(since.minus(1, ChronoUnit.DAYS)) + "\"";
+			contents = "/rest/api/content/search?cql=" + URLEncoder.encode(cql, StandardCharsets.UTF_8);
+		}
+		final var entries = new ArrayList<PageIndex.Entry>();
+		try (var session = sessions.borrow(parameters)) {
+			Map<String, Object> page;
+			Collection<Map<String, Object>> results;
+			var start = 0;
+			do {
+				page = getPage(session.getProcessor(), url + contents + "&expand=version,metadata.labels&limit="
+						+ PAGE_SIZE + "&start=" + start);
+				results = (Collection<Map<String, Object>>) page.get("results");
+				results.forEach(c -> entries.add(toEntry(url, space, c)));
+				// The server may return less contents than the requested limit
+				start += results.size();
+			} while (!results.isEmpty()
+					&& ((Map<?, ?>) page.getOrDefault("_links", Map.of())).containsKey("next"));
+		}
+		for (final var entry : entries) {
+			cache.pages.put(entry);
+			if (entry.lastModified() != null) {
+				// The first scan only sees the last edit of each page
+				cache.history.record(space, entry.lastModified(), since == null);
+			}
+		}
+		cache.pages.setRefreshed(space, started);
+	}
+
+	private Map<String, Object> getPage(final CurlProcessor processor, final String url) throws IOException {
+		final var request = ConfluenceCurlProcessor.newGet(url);
+		processor.process(request);
+		// A missing page is a failure, not the end of the contents
+		if (request.getResponse() == null) {
+			throw new IOException("Unable to read the Confluence contents at " + url);
+		}
+		final Map<String, Object> page = objectMapper.readValue(request.getResponse(), TYPE_PAGE_REF);
+		if (!(page.get("results") instanceof Collection)) {
+			throw new IOException("No Confluence contents at " + url);
+		}
+		return page;
+	}
+
+	/**
+	 * Map a raw Confluence content to an index entry.
+	 */
+	@SuppressWarnings("unchecked")
+	private PageIndex.Entry toEntry(final String url, final String space, final Map<String, Object> content) {
+		final var version = (Map<String, Object>) content.get("version");
+		final var metadata = (Map<String, Object>) content.get("metadata");
+		final var labels = metadata == null || metadata.get("labels") == null ? List.<String>of()
+				: ((Collection<Map<String, Object>>) ((Map<String, Object>) metadata.get("labels")).get("results"))
+						.stream().map(l -> (String) l.get("name")).toList();
+		final var links = (Map<String, Object>) content.get("_links");
+		final var id = (String) content.get("id");
+		return new PageIndex.Entry(space, id, (String) content.get("title"), labels,
+				version == null ? null : resource.parseTimestamp((String) version.get("when")),
+				links == null || links.get("webui") == null ? url + "/pages/viewpage.action?pageId=" + id
+						: url + links.get("webui"));
+	}
+}
@@ -0,0 +1,383 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.confluence;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Strings;
+import org.ligoj.bootstrap.core.curl.CurlProcessor;
+import org.ligoj.bootstrap.core.curl.CurlRequest;
+import org.ligoj.bootstrap.core.validation.ValidationJsonException;
+import org.ligoj.bootstrap.resource.system.configuration.ConfigurationResource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.ws.rs.HttpMethod;
+import jakarta.ws.rs.ServiceUnavailableException;
+
+/**
+ * Long-lived authenticated Confluence sessions, one per Confluence URL and account. A session keeps its processor, and
+ * so its pooled keep-alive connections and its Confluence cookies, across all operations of this plug-in. The
+ * concurrent requests to the same Confluence URL are bounded, and the idle sessions are closed.
+ */
+@Component
+public class ConfluenceSessionPool {
+
+	/**
+	 * Configuration key of the maximal amount of concurrent requests per Confluence URL, the hedged attempts included.
+	 * Read when the first session of this URL is created.
+	 */
+	public static final String CONF_MAX_CONNECTIONS = ConfluencePluginResource.KEY + ":max-connections";
+
+	/**
+	 * Configuration key of the idle duration in seconds after which a session is closed.
+	 */
+	public static final String CONF_IDLE_TIMEOUT = ConfluencePluginResource.KEY + ":idle-timeout";
+
+	/**
+	 * Configuration key of the maximal duration in seconds of a session, before a new authentication. Should be lower
+	 * than the Confluence session timeout.
+	 */
+	public static final String CONF_SESSION_TTL = ConfluencePluginResource.KEY + ":session-ttl";
+
+	/**
+	 * Configuration key of the maximal amount of retries of an idempotent request after a transient failure.
+	 */
+	public static final String CONF_RETRIES = ConfluencePluginResource.KEY + ":retries";
+
+	/**
+	 * Configuration key of the latency percentile after which an idempotent request is sent again, the first response
+	 * wins. <code>0</code> disables the hedging.
+	 */
+	public static final String CONF_HEDGE_PERCENTILE = ConfluencePluginResource.KEY + ":hedge-percentile";
+
+	/**
+	 * Configuration key of the percentage of extra requests, hedges and retries, allowed per Confluence node.
+	 */
+	public static final String CONF_RETRY_BUDGET = ConfluencePluginResource.KEY + ":retry-budget";
+
+	@Autowired
+	private ConfigurationResource configuration;
+
+	private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+
+	/**
+	 * Hedging policies, by Confluence URL. They survive the sessions.
+	 */
+	private final Map<String, HedgingPolicy> policies = new ConcurrentHashMap<>();
+
+	/**
+	 * Available connections, by Confluence URL. They survive the sessions.
+	 */
+	private final Map<String, Semaphore> permits = new ConcurrentHashMap<>();
+
+	/**
+	 * Pending authentications, by session key. A single caller authenticates a session, the concurrent ones wait for
+	 * it.
+	 */
+	private final Map<String, CompletableFuture<Session>> logins = new ConcurrentHashMap<>();
+
+	/**
+	 * Executor of the hedged attempts of all sessions, shut down with this pool.
+	 */
+	private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+	/**
+	 * An authenticated session.
+	 */
+	private static final class Session {
+		private final CurlProcessor processor;
+		private final long created = System.currentTimeMillis();
+		private final AtomicInteger leases = new AtomicInteger();
+		private final AtomicBoolean retired = new AtomicBoolean();
+		private volatile long lastUsed = created;
+
+		private Session(final CurlProcessor processor) {
+			this.processor = processor;
+		}
+
+		/**
+		 * Close the processor once the last lease is released.
+		 */
+		private void retire() {
+			retired.set(true);
+			closeIfUnused();
+		}
+
+		private void closeIfUnused() {
+			if (retired.get() && leases.get() == 0) {
+				processor.close();
+			}
+		}
+	}
+
+	/**
+	 * A lease of an authenticated session, to be closed once the operation is done.
+	 */
+	public static final class Lease implements AutoCloseable {
+		private final Session session;
+		private final AtomicBoolean released = new AtomicBoolean();
+
+		private Lease(final Session session) {
+			this.session = session;
+		}
+
+		/**
+		 * Return the authenticated processor.
+		 *
+		 * @return The authenticated processor. Must not be closed by the caller.
+		 */
+		public CurlProcessor getProcessor() {
+			return session.processor;
+		}
+
+		@Override
+		public void close() {
+			if (released.compareAndSet(false, true)) {
+				session.lastUsed = System.currentTimeMillis();
+				session.leases.decrementAndGet();
+				session.closeIfUnused();
+			}
+		}
+	}
+
+	/**
+	 * Return a lease of the authenticated session of the given node parameters. A new session is authenticated once
+	 * when there is no valid one, the concurrent callers wait for it within the current {@link Deadline}. The lease
+	 * does not hold a connection, each request waits for its own, see {@link #CONF_MAX_CONNECTIONS}.
+	 *
+	 * @param parameters The node parameters.
+	 * @return The session lease.
+	 */
+	public Lease borrow(final Map<String, String> parameters) {
+		final long now = System.currentTimeMillis();
+		evictIdle(now);
+		final long ttl = configuration.get(CONF_SESSION_TTL, 600) * 1000L;
+		final var key = toKey(parameters);
+		Session session = null;
+		while (session == null) {
+			final var current = sessions.get(key);
+			if (current != null && now - current.created < ttl) {
+				session = lease(current);
+			} else {
+				final var pending = new CompletableFuture<Session>();
+				final var running = logins.putIfAbsent(key, pending);
+				if (running == null) {
+					session = login(key, parameters, current, pending);
+				} else {
+					// Another caller is authenticating this session
+					await(running);
+				}
+			}
+		}
+		return new Lease(session);
+	}
+
+	/**
+	 * Authenticate and publish a new leased session, and complete the pending authentication of the concurrent
+	 * callers.
+	 *
+	 * @return The leased session, or <code>null</code> when another session has been published meanwhile.
+	 */
+	private Session login(final String key, final Map<String, String> parameters, final Session current,
+			final CompletableFuture<Session> pending) {
+		try {
+			if (sessions.get(key) != current) {
+				// Authenticated by another caller since the lookup
+				pending.complete(null);
+				return null;
+			}
+			final var fresh = login(parameters);
+			fresh.leases.incrementAndGet();
+			sessions.put(key, fresh);
+			if (current != null) {
+				// Expired session, closed once no more used
+				current.retire();
+			}
+			pending.complete(fresh);
+			return fresh;
+		} catch (final RuntimeException e) {
+			pending.completeExceptionally(e);
+			throw e;
+		} finally {
+			logins.remove(key, pending);
+		}
+	}
+
+	/**
+	 * Wait for the authentication of another caller, within the deadline of the current operation when defined, and
+	 * within the maximal wait.
+	 */
+	private void await(final CompletableFuture<Session> running) {
+		try {
+			running.get(Math.max(0, Math.min(Deadline.remaining(), ConfluenceCurlProcessor.MAX_WAIT)),
+					TimeUnit.MILLISECONDS);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ServiceUnavailableException();
+		} catch (final TimeoutException e) {
+			throw new ServiceUnavailableException();
+		} catch (final ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException re) {
+				// Same failure than the authenticating caller
+				throw re;
+			}
+			throw new ServiceUnavailableException();
+		}
+	}
+
+	/**
+	 * Take a lease of a published session.
+	 *
+	 * @return The leased session, or <code>null</code> when the session has been retired meanwhile.
+	 */
+	private Session lease(final Session session) {
+		session.leases.incrementAndGet();
+		if (session.retired.get()) {
+			session.leases.decrementAndGet();
+			session.closeIfUnused();
+			return null;
+		}
+		return session;
+	}
+
+	/**
+	 * Authenticate a new session. The processor authenticates again once when Confluence invalidates this session
+	 * before its end.
+	 */
+	private Session login(final Map<String, String> parameters) {
+		final var processor = new ConfluenceCurlProcessor(getPolicy(parameters), executor, getPermits(parameters));
+		try {
+			authenticate(parameters, processor);
+		} catch (final RuntimeException e) {
+			processor.close();
+			throw e;
+		}
+		processor.setLogin(() -> authenticate(parameters, processor));
+		return new Session(processor);
+	}
+
+	/**
+	 * Return the hedging policy of the Confluence node of the given parameters.
+	 *
+	 * @param parameters The node parameters.
+	 * @return The hedging policy, shared by the sessions of this node.
+	 */
+	HedgingPolicy getPolicy(final Map<String, String> parameters) {
+		return policies.computeIfAbsent(
+				Strings.CS.removeEnd(parameters.get(ConfluencePluginResource.PARAMETER_URL), "/"),
+				u -> new HedgingPolicy(configuration));
+	}
+
+	/**
+	 * Return the available connections to the Confluence node of the given parameters.
+	 *
+	 * @param parameters The node parameters.
+	 * @return The available connections, shared by the sessions of this node.
+	 */
+	Semaphore getPermits(final Map<String, String> parameters) {
+		return permits.computeIfAbsent(
+				Strings.CS.removeEnd(parameters.get(ConfluencePluginResource.PARAMETER_URL), "/"),
+				u -> new Semaphore(Math.max(1, configuration.get(CONF_MAX_CONNECTIONS, 5))));
+	}
+
+	/**
+	 * Close the sessions idle for too long.
+	 */
+	private void evictIdle(final long now) {
+		final long idle = configuration.get(CONF_IDLE_TIMEOUT, 120) * 1000L;
+		new ArrayList<>(sessions.keySet()).forEach(k -> sessions.computeIfPresent(k, (key, s) -> {
+			if (s.leases.get() == 0 && now - s.lastUsed >= idle) {
+				s.retire();
+				return null;
+			}
+			return s;
+		}));
+	}
+
+	/**
+	 * Evict the session of the given node parameters, for instance after a configuration change.
+	 *
+	 * @param parameters The node parameters.
+	 */
+	public void evict(final Map<String, String> parameters) {
+		final var session = sessions.remove(toKey(parameters));
+		if (session != null) {
+			session.retire();
+		}
+	}
+
+	/**
+	 * Close all sessions, and stop the pending hedged attempts.
+	 */
+	@PreDestroy
+	public void destroy() {
+		clear();
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Close all sessions, and forget the hedging policies and the connection bounds.
+	 */
+	public void clear() {
+		policies.clear();
+		permits.clear();
+		new ArrayList<>(sessions.keySet()).forEach(k -> {
+			final var session = sessions.remove(k);
+			if (session != null) {
+				session.retire();
+			}
+		});
+	}
+
+	/**
+	 * Return the session key of the given node parameters.
+	 */
+	private String toKey(final Map<String, String> parameters) {
+		return Strings.CS.removeEnd(parameters.get(ConfluencePluginResource.PARAMETER_URL), "/") + "\n"
+				+ parameters.get(ConfluencePluginResource.PARAMETER_USER) + "\n"
+				+ StringUtils.defaultString(parameters.get(ConfluencePluginResource.PARAMETER_PASSWORD)).hashCode();
+	}
+
+	/**
+	 * Prepare an authenticated connection to Confluence
+	 *
+	 * @param parameters The node parameters.
+	 * @param processor  The processor to authenticate.
+	 */
+	public void authenticate(final Map<String, String> parameters, final CurlProcessor processor) {
+		final var user = parameters.get(ConfluencePluginResource.PARAMETER_USER);
+		final var password = StringUtils.trimToEmpty(parameters.get(ConfluencePluginResource.PARAMETER_PASSWORD));
+		final var url = Strings.CS.appendIfMissing(parameters.get(ConfluencePluginResource.PARAMETER_URL), "/")
+				+ "dologin.action";
+		final var requests = new ArrayList<CurlRequest>();
+		requests.add(new CurlRequest(HttpMethod.GET, url, null));
+		requests.add(
+				new CurlRequest(HttpMethod.POST, url,
+						"os_username=" + user + "&os_password=" + password
+								+ "&os_destination=&atl_token=&login=Connexion",
+						ConfluenceCurlProcessor.LOGIN_CALLBACK,
+						"Accept:text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8"));
+		if (!processor.process(requests)) {
+			if (Deadline.remaining() <= 0) {
+				// Not a login failure, the operation has no more time
+				throw new ServiceUnavailableException();
+			}
+			throw new ValidationJsonException(ConfluencePluginResource.PARAMETER_URL, "confluence-login", user);
+		}
+	}
+}
@@ -0,0 +1,166 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.confluence;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+import org.apache.commons.lang3.Strings;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * A paging session over the Confluence spaces. The session uses a single authenticated session for all pages, and
+ * the next page is fetched in background while the current one is being consumed.
+ */
+class ConfluenceSpacePager implements AutoCloseable {
+
+	/**
+	 * Amount of spaces per page.
+	 */
+	static final int PAGE_SIZE = 100;
+
+	/**
+	 * Jackson type reference for a page of Confluence spaces
+	 */
+	private static final TypeReference<Map<String, Object>> TYPE_PAGE_REF = new TypeReference<>() {
+		// Nothing to override
+	};
+
+	private final ConfluenceSessionPool.Lease session;
+	private final ObjectMapper objectMapper;
+	private final Executor executor;
+	private final String url;
+	private final String type;
+	private final int pageSize;
+
+	/**
+	 * The cursor position of the next page to fetch: the amount of spaces read so far.
+	 */
+	private int start;
+
+	/**
+	 * The pending page. <code>null</code> when there is no more page to fetch.
+	 */
+	private CompletableFuture<Map<String, Object>> pending;
+
+	/**
+	 * Constructor starting the fetch of the first page of global spaces.
+	 *
+	 * @param session      The authenticated session, released when this pager is closed.
+	 * @param objectMapper The JSON mapper.
+	 * @param executor     The executor of background page fetches.
+	 * @param url          The Confluence base URL.
+	 */
+	ConfluenceSpacePager(final ConfluenceSessionPool.Lease session, final ObjectMapper objectMapper, final Executor executor,
+			final String url) {
+		this(session, objectMapper, executor, url, "global", PAGE_SIZE);
+	}
+
+	/**
+	 * Constructor starting the fetch of the first page.
+	 *
+	 * @param session      The authenticated session, released when this pager is closed.
+	 * @param objectMapper The JSON mapper.
+	 * @param executor     The executor of background page fetches.
+	 * @param url          The Confluence base URL.
+	 * @param type         The space type: <code>global</code>, <code>personal</code>, or <code>null</code> for all
+	 *                     spaces.
+	 * @param pageSize     Amount of spaces per page.
+	 */
+	ConfluenceSpacePager(final ConfluenceSessionPool.Lease session, final ObjectMapper objectMapper, final Executor executor,
+			final String url, final String type, final int pageSize) {
+		this.session = session;
+		this.objectMapper = objectMapper;
+		this.executor = executor;
+		this.url = Strings.CS.removeEnd(url, "/");
+		this.type = type;
+		this.pageSize = pageSize;
+		this.pending = fetch();
+	}
+
+	/**
+	 * Return the next page of raw spaces, and start fetching the following one when available.
+	 *
+	 * @return The raw spaces of the next page. Empty when there is no more page.
+	 * @throws IOException When the page cannot be fetched or read. The pager is then over, and the spaces read so far
+	 *                     are not the complete list.
+	 */
+	@SuppressWarnings("unchecked")
+	Collection<Map<String, Object>> next() throws IOException {
+		if (pending == null) {
+			return Collections.emptyList();
+		}
+		final Map<String, Object> page;
+		try {
+			page = pending.join();
+		} catch (final CompletionException e) {
+			pending = null;
+			if (e.getCause() instanceof IOException ioe) {
+				throw ioe;
+			}
+			throw e;
+		}
+
+		// Prefetch the next page while this one is being consumed, the server may return less spaces than the limit
+		final var results = (Collection<Map<String, Object>>) page.get("results");
+		start += results.size();
+		final var links = (Map<?, ?>) page.getOrDefault("_links", Collections.emptyMap());
+		pending = results.isEmpty() || !links.containsKey("next") ? null : fetch();
+		return results;
+	}
+
+	/**
+	 * Indicate there are more pages to fetch.
+	 *
+	 * @return <code>true</code> when there are more spaces to fetch.
+	 */
+	boolean hasNext() {
+		return pending != null;
+	}
+
+	/**
+	 * Fetch the page at the current cursor position, within the deadline of the caller. The cursor is moved once the
+	 * page is read.
+	 */
+	private CompletableFuture<Map<String, Object>> fetch() {
+		final var request = ConfluenceCurlProcessor.newGet(url + "/rest/api/space?"
+				+ (type == null ? "" : "type=" + type + "&") + "limit=" + pageSize + "&start=" + start);
+		return CompletableFuture.supplyAsync(Deadline.bind(() -> {
+			session.getProcessor().process(request);
+			try {
+				// A missing page is a failure, not the end of the spaces
+				if (request.getResponse() == null) {
+					throw new IOException("Unable to read the Confluence spaces at " + request.getUrl());
+				}
+				final Map<String, Object> page = objectMapper.readValue(request.getResponse(), TYPE_PAGE_REF);
+				if (!(page.get("results") instanceof Collection)) {
+					throw new IOException("No Confluence spaces at " + request.getUrl());
+				}
+				return page;
+			} catch (final IOException e) {
+				throw new CompletionException(e);
+			}
+		}), executor);
+	}
+
+	/**
+	 * Release the session once the pending page, if any, is completed.
+	 */
+	@Override
+	public void close() {
+		if (pending == null) {
+			session.close();
+		} else {
+			pending.whenComplete((r, e) -> session.close());
+			pending = null;
+		}
+	}
+}
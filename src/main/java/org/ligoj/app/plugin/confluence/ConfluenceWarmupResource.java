@@ -0,0 +1,206 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.confluence;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.apache.commons.lang3.StringUtils;
+import org.ligoj.app.dao.NodeRepository;
+import org.ligoj.app.dao.ParameterValueRepository;
+import org.ligoj.app.model.Node;
+import org.ligoj.app.model.ParameterValue;
+import org.ligoj.app.resource.node.ParameterValueResource;
+import org.ligoj.bootstrap.core.security.SecurityHelper;
+import org.ligoj.bootstrap.resource.system.configuration.ConfigurationResource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import jakarta.ws.rs.ForbiddenException;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Optional warm-up of the Confluence nodes at startup. Each node is authenticated, its version is probed, and its
+ * space catalog, its active spaces and the status of its active subscriptions are cached, so the first user does not
+ * pay for them. The warm-up runs in background and does not delay the application readiness.
+ */
+@Path(ConfluencePluginResource.URL + "/warmup")
+@Service
+@Produces(MediaType.APPLICATION_JSON)
+@Slf4j
+public class ConfluenceWarmupResource {
+
+	/**
+	 * Configuration key of the amount of nodes warmed up in parallel at startup. <code>0</code> disables the warm-up.
+	 */
+	public static final String CONF_WARMUP = ConfluencePluginResource.KEY + ":warmup";
+
+	/**
+	 * Configuration key of the maximal amount of subscriptions of a node whose status is cached by the warm-up.
+	 */
+	public static final String CONF_WARMUP_SUBSCRIPTIONS = ConfluencePluginResource.KEY + ":warmup-subscriptions";
+
+	@Autowired
+	private NodeRepository nodeRepository;
+
+	@Autowired
+	private ParameterValueRepository parameterValueRepository;
+
+	@Autowired
+	private ParameterValueResource pvResource;
+
+	@Autowired
+	private ConfigurationResource configuration;
+
+	@Autowired
+	private ConfluencePluginResource resource;
+
+	@Autowired
+	private ConfluenceSessionPool sessions;
+
+	@Autowired
+	private SecurityHelper securityHelper;
+
+	private final AtomicBoolean started = new AtomicBoolean();
+
+	private volatile Instant start;
+
+	private volatile Instant end;
+
+	private final AtomicInteger total = new AtomicInteger();
+
+	private final AtomicInteger completed = new AtomicInteger();
+
+	private final Map<String, String> versions = new ConcurrentHashMap<>();
+
+	private final Map<String, String> failures = new ConcurrentHashMap<>();
+
+	/**
+	 * Start the warm-up in background, once, when enabled.
+	 */
+	@EventListener(ContextRefreshedEvent.class)
+	public void onStartup() {
+		final var parallelism = configuration.get(CONF_WARMUP, 0);
+		if (parallelism > 0 && started.compareAndSet(false, true)) {
+			Thread.ofVirtual().name("confluence-warmup").start(() -> warmUp(parallelism));
+		}
+	}
+
+	/**
+	 * Return the progress of the warm-up. The versions and the failures of the nodes are only exposed to the users
+	 * able to administrate the Confluence tool node.
+	 *
+	 * @return The progress of the warm-up.
+	 */
+	@GET
+	public WarmupStatus getStatus() {
+		if (nodeRepository.findOneWritable(ConfluencePluginResource.KEY, securityHelper.getLogin()) == null) {
+			throw new ForbiddenException();
+		}
+		final var status = new WarmupStatus();
+		status.setStart(start);
+		status.setEnd(end);
+		status.setTotal(total.get());
+		status.setCompleted(completed.get());
+		status.setVersions(new TreeMap<>(versions));
+		status.setFailures(new TreeMap<>(failures));
+		return status;
+	}
+
+	/**
+	 * Warm up all Confluence nodes, and wait for the end.
+	 *
+	 * @param parallelism The amount of nodes warmed up in parallel.
+	 */
+	void warmUp(final int parallelism) {
+		start = Instant.now();
+		end = null;
+		completed.set(0);
+		versions.clear();
+		failures.clear();
+		try {
+			final var nodes = nodeRepository.findAll().stream().map(Node::getId)
+					.filter(n -> n.startsWith(ConfluencePluginResource.KEY + ":")).toList();
+
+			// The parameters are read within this thread, only the Confluence requests are parallel. The subscribed
+			// spaces are read at once from their parameter values
+			final var spaces = parameterValueRepository.findAllBy("parameter.id", ConfluencePluginResource.PARAMETER_SPACE)
+					.stream().filter(v -> v.getSubscription() != null
+							&& nodes.contains(v.getSubscription().getNode().getId()))
+					.collect(Collectors.groupingBy(v -> v.getSubscription().getNode().getId(),
+							Collectors.mapping(ParameterValue::getData, Collectors.toList())));
+			final var parameters = nodes.stream()
+					.collect(Collectors.toMap(Function.identity(), pvResource::getNodeParameters));
+			total.set(nodes.size());
+			log.info("Warming up {} Confluence nodes", nodes.size());
+			try (var executor = Executors.newFixedThreadPool(parallelism, Thread.ofVirtual().factory())) {
+				nodes.forEach(n -> executor.execute(
+						() -> warmUp(n, parameters.get(n), spaces.getOrDefault(n, List.of()))));
+			}
+		} catch (final RuntimeException e) {
+			log.warn("Unable to warm up the Confluence nodes", e);
+		}
+		end = Instant.now();
+		log.info("Confluence nodes warmed up in {}ms, {} failures", end.toEpochMilli() - start.toEpochMilli(),
+				failures.size());
+	}
+
+	/**
+	 * Warm up a node within the deadline of the <code>warmup</code> operation, see
+	 * {@link ConfluencePluginResource#CONF_DEADLINE}. All the requests of this node are bounded by this deadline,
+	 * including the version probe and the background pages of the catalog.
+	 */
+	private void warmUp(final String node, final Map<String, String> parameters, final List<String> spaces) {
+		try (var deadline = Deadline
+				.start(configuration.get(ConfluencePluginResource.CONF_DEADLINE + "warmup", 30000))) {
+			if (parameters.get(ConfluencePluginResource.PARAMETER_URL) == null) {
+				// Abstract node
+				return;
+			}
+
+			// Connection and authentication
+			sessions.borrow(parameters).close();
+			versions.put(node, Objects.toString(resource.getVersion(parameters), ""));
+			if (Boolean.parseBoolean(parameters.get(ConfluencePluginResource.PARAMETER_CATALOG))) {
+				resource.refreshCatalog(node, parameters);
+			}
+
+			// Status of the subscriptions to the active spaces, the parameters are only built for these ones
+			final var active = resource.getNodeActivities(node, parameters).stream().map(ActiveSpace::getId).toList();
+			spaces.stream().distinct().filter(active::contains)
+					.limit(configuration.get(CONF_WARMUP_SUBSCRIPTIONS, 20)).forEach(space -> {
+						final var p = new HashMap<>(parameters);
+						p.put(ConfluencePluginResource.PARAMETER_SPACE, space);
+						try {
+							resource.getSpaceSummary(p);
+						} catch (final Exception e) {
+							// The status of this space is not cached, the other ones are still warmed up
+							log.info("Unable to warm up the Confluence space {}", space, e);
+						}
+					});
+			log.info("Confluence node {} warmed up", node);
+		} catch (final Exception e) {
+			log.warn("Unable to warm up the Confluence node {}", node, e);
+			failures.put(node, StringUtils.defaultString(e.getMessage(), e.getClass().getSimpleName()));
+		} finally {
+			completed.incrementAndGet();
+		}
+	}
+}
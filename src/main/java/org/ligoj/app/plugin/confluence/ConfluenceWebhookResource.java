@@ -0,0 +1,204 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.confluence;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.commons.lang3.ObjectUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Strings;
+import org.ligoj.app.resource.node.ParameterValueResource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.ForbiddenException;
+import jakarta.ws.rs.HeaderParam;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.core.MediaType;
+
+/**
+ * Confluence webhook receiver. The events pushed by Confluence update the caches of this plug-in, so the data is
+ * refreshed only when something changed. The body is signed by Confluence with the shared secret of the node, see
+ * {@link #PARAMETER_SECRET}. The webhook URL registered in Confluence is
+ * <code>rest/service/km/confluence/webhook/{node}</code>, authenticated with an API key of a technical user.
+ */
+@Path(ConfluencePluginResource.URL + "/webhook")
+@Service
+public class ConfluenceWebhookResource {
+
+	/**
+	 * Shared secret used by Confluence to sign the webhook events.
+	 */
+	public static final String PARAMETER_SECRET = ConfluencePluginResource.KEY + ":webhook-secret";
+
+	/**
+	 * Header containing the HMAC SHA-256 signature of the body.
+	 */
+	public static final String HEADER_SIGNATURE = "X-Hub-Signature";
+
+	/**
+	 * Content events of an edit, recorded as the last activity of the space.
+	 */
+	private static final Set<String> EDIT_EVENTS = Set.of("page_created", "page_updated", "blog_created",
+			"blog_updated");
+
+	@Autowired
+	private ParameterValueResource pvResource;
+
+	@Autowired
+	private ConfluencePluginResource resource;
+
+	@Autowired
+	private ConfluenceCache cache;
+
+	@Autowired
+	private AvatarStore avatarStore;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	/**
+	 * Receive a Confluence event.
+	 *
+	 * @param node      The node sending this event.
+	 * @param signature The body signature, as <code>sha256=HEX</code>.
+	 * @param body      The raw event.
+	 * @throws IOException When the event cannot be read.
+	 */
+	@POST
+	@Path("{node}")
+	@Consumes(MediaType.APPLICATION_JSON)
+	public void receive(@PathParam("node") final String node, @HeaderParam(HEADER_SIGNATURE) final String signature,
+			final String body) throws IOException {
+		final Map<String, String> parameters = pvResource.getNodeParameters(node);
+		checkSignature(parameters.get(PARAMETER_SECRET), signature, body);
+		apply(parameters.get(ConfluencePluginResource.PARAMETER_URL), node,
+				objectMapper.readValue(body, WebhookEvent.class));
+	}
+
+	/**
+	 * Check the signature of the body.
+	 */
+	private void checkSignature(final String secret, final String signature, final String body) {
+		if (StringUtils.isEmpty(secret) || signature == null) {
+			throw new ForbiddenException();
+		}
+		try {
+			final var mac = Mac.getInstance("HmacSHA256");
+			mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+			final var expected = HexFormat.of().formatHex(mac.doFinal(body.getBytes(StandardCharsets.UTF_8)));
+			if (!MessageDigest.isEqual(expected.getBytes(StandardCharsets.US_ASCII),
+					Strings.CI.removeStart(signature, "sha256=").getBytes(StandardCharsets.US_ASCII))) {
+				throw new ForbiddenException();
+			}
+		} catch (final GeneralSecurityException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Apply the event to the caches.
+	 *
+	 * @param url   The Confluence base URL.
+	 * @param node  The node sending this event.
+	 * @param event The event to apply.
+	 */
+	protected void apply(final String url, final String node, final WebhookEvent event) {
+		final var name = StringUtils.defaultString(event.getEvent());
+		if (name.startsWith("user_") && event.getUser() != null) {
+			// The avatar and the display name may have changed
+			final var login = event.getUser();
+			avatarStore.evict(login);
+			cache.activities.evictIf(a -> a.isPresent() && login.equals(a.get().getAuthor().getId()));
+		} else if (name.startsWith("space_") && event.getSpace() != null && event.getSpace().getKey() != null) {
+			final var key = ConfluenceCache.toKey(url, event.getSpace().getKey());
+			cache.spaces.evict(key);
+			cache.activities.evict(key);
+			final var catalog = cache.catalogs.get(node);
+			if (name.endsWith("_removed")) {
+				cache.pages.removeSpace(key);
+				cache.history.removeSpace(key);
+				if (catalog != null) {
+					catalog.remove(event.getSpace().getKey());
+				}
+			} else if (catalog != null) {
+				catalog.put(event.getSpace().getKey(), event.getSpace().getName());
+			}
+			cache.nodeActivities.evict(node);
+		} else if (event.getPage() != null && event.getPage().getSpaceKey() != null) {
+			applyContent(url, node, name, event);
+		}
+	}
+
+	/**
+	 * Apply a content event to the caches.
+	 */
+	private void applyContent(final String url, final String node, final String name, final WebhookEvent event) {
+		final var key = ConfluenceCache.toKey(url, event.getPage().getSpaceKey());
+		if (name.endsWith("_removed") || name.endsWith("_trashed")) {
+			// The last activity of this space is unknown
+			cache.activities.evict(key);
+			cache.pages.remove(key, event.getPage().getId());
+		} else if (EDIT_EVENTS.contains(name) && event.getUser() != null) {
+			// An edit: the new last activity of this space
+			final var activity = toActivity(url, event);
+			if (event.getPage().getModificationDate() != null) {
+				// Without the modification date, this edit cannot be told apart from the one read by the indexation
+				cache.history.record(key, activity.getTimestamp(), false);
+			}
+			final var previous = Optional.ofNullable(cache.activities.getIfPresent(key)).flatMap(a -> a).orElse(null);
+			keepAvatar(activity, previous);
+			cache.activities.put(key, Optional.of(activity));
+			cache.pages.invalidate(key);
+		} else {
+			// Moved or restored content, the last activity of this space is unknown
+			cache.activities.evict(key);
+			cache.pages.invalidate(key);
+		}
+		cache.nodeActivities.evict(node);
+	}
+
+	/**
+	 * Build the activity from a content event.
+	 */
+	private SpaceActivity toActivity(final String url, final WebhookEvent event) {
+		final var page = event.getPage();
+		final var activity = new SpaceActivity();
+		activity.setAuthor(resource.toSimpleUser(event.getUser(), event.getUser()));
+		activity.setPage(page.getTitle());
+		// The "self" link of the event is a REST resource, not a page to browse
+		activity.setPageUrl(Strings.CS.removeEnd(url, "/") + "/pages/viewpage.action?pageId="
+				+ URLEncoder.encode(StringUtils.defaultString(page.getId()), StandardCharsets.UTF_8));
+		final var timestamp = ObjectUtils.getIfNull(page.getModificationDate(), event::getTimestamp);
+		activity.setTimestamp(timestamp == null ? Instant.now() : Instant.ofEpochMilli(timestamp));
+		return activity;
+	}
+
+	/**
+	 * Keep the avatar of the previous activity of the same author.
+	 */
+	private void keepAvatar(final SpaceActivity activity, final SpaceActivity previous) {
+		if (previous != null && previous.getAuthor().getId().equals(activity.getAuthor().getId())) {
+			activity.setAvatar(previous.getAvatar());
+			activity.setAuthorAvatar(previous.getAuthorAvatar());
+		}
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.confluence;
+
+import java.util.function.Supplier;
+
+/**
+ * The total time budget of an operation made of several Confluence requests. The deadline is bound to the current
+ * thread until closed, and each request of the operation is given the remaining time as timeout, see
+ * {@link ConfluenceCurlProcessor}. A nested deadline cannot extend the enclosing one.
+ */
+final class Deadline implements AutoCloseable {
+
+	private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+
+	/**
+	 * End of this deadline, in milliseconds.
+	 */
+	private final long end;
+
+	/**
+	 * The enclosing deadline to restore on close. May be <code>null</code>.
+	 */
+	private final Deadline previous;
+
+	private Deadline(final long end, final Deadline previous) {
+		this.end = end;
+		this.previous = previous;
+	}
+
+	/**
+	 * Start a deadline bound to the current thread.
+	 *
+	 * @param budget The time budget in milliseconds.
+	 * @return The started deadline, to be closed once the operation is done.
+	 */
+	static Deadline start(final long budget) {
+		return startAt(System.currentTimeMillis() + budget);
+	}
+
+	/**
+	 * Start a deadline ending at the given time, bound to the current thread.
+	 */
+	private static Deadline startAt(final long end) {
+		final var previous = CURRENT.get();
+		final var deadline = new Deadline(previous == null ? end : Math.min(previous.end, end), previous);
+		CURRENT.set(deadline);
+		return deadline;
+	}
+
+	/**
+	 * Bind a task to the current deadline, so the task is bounded by the same end when it is run by another thread.
+	 *
+	 * @param task The task to bind.
+	 * @param <T>  The result type.
+	 * @return The bound task. The given task when there is no current deadline.
+	 */
+	static <T> Supplier<T> bind(final Supplier<T> task) {
+		final var current = CURRENT.get();
+		if (current == null) {
+			return task;
+		}
+		return () -> {
+			try (var deadline = startAt(current.end)) {
+				return task.get();
+			}
+		};
+	}
+
+	/**
+	 * Return the remaining time of the current deadline.
+	 *
+	 * @return The remaining time in milliseconds, may be negative. {@link Long#MAX_VALUE} when there is no deadline.
+	 */
+	static long remaining() {
+		final var deadline = CURRENT.get();
+		return deadline == null ? Long.MAX_VALUE : deadline.end - System.currentTimeMillis();
+	}
+
+	/**
+	 * Indicate the current deadline is over. The non-essential steps should be skipped.
+	 *
+	 * @return <code>true</code> when the current deadline is over.
+	 */
+	static boolean isExpired() {
+		return remaining() <= 0;
+	}
+
+	@Override
+	public void close() {
+		if (previous == null) {
+			CURRENT.remove();
+		} else {
+			CURRENT.set(previous);
+		}
+	}
+}
@@ -0,0 +1,136 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.confluence;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.ligoj.bootstrap.resource.system.configuration.ConfigurationResource;
+
+/**
+ * The hedging and retry policy of the idempotent requests sent to a Confluence node. It is shared by the successive
+ * sessions of this node, so the observed latencies and the retry budget survive a new authentication.
+ * <p>
+ * The hedge delay is a percentile of the recent latencies, the 95th by default. The hedges and the retries are extra
+ * requests withdrawn from a budget, refilled by a ratio of each original request, so an outage of the node is not
+ * amplified.
+ */
+class HedgingPolicy {
+
+	/**
+	 * Amount of recent latencies kept to compute the hedge delay.
+	 */
+	static final int SAMPLES = 100;
+
+	/**
+	 * Minimal amount of latencies before hedging.
+	 */
+	static final int MIN_SAMPLES = 20;
+
+	/**
+	 * Minimal hedge delay in milliseconds. The hedging only targets the slow responses, not the usual jitter.
+	 */
+	static final long MIN_DELAY = 100;
+
+	/**
+	 * Maximal amount of extra requests the budget can hold.
+	 */
+	static final int MAX_TOKENS = 10;
+
+	/**
+	 * Base delay in milliseconds of the retry backoff.
+	 */
+	private static final long BACKOFF = 100;
+
+	private final ConfigurationResource configuration;
+
+	/**
+	 * Recent latencies in milliseconds, as a ring.
+	 */
+	private final long[] latencies = new long[SAMPLES];
+
+	/**
+	 * Amount of recorded latencies.
+	 */
+	private long recorded;
+
+	/**
+	 * Available extra requests, in hundredths of request.
+	 */
+	private int tokens = MAX_TOKENS * 100;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param configuration The configuration, read for each request.
+	 */
+	HedgingPolicy(final ConfigurationResource configuration) {
+		this.configuration = configuration;
+	}
+
+	/**
+	 * Record the latency of a successful request.
+	 *
+	 * @param latency The latency in milliseconds.
+	 */
+	synchronized void record(final long latency) {
+		latencies[(int) (recorded++ % SAMPLES)] = latency;
+	}
+
+	/**
+	 * Return the delay after which a duplicate request is sent.
+	 *
+	 * @return The delay in milliseconds, or <code>-1</code> when the hedging is disabled or the latencies are not yet
+	 *         known.
+	 */
+	synchronized long getHedgeDelay() {
+		final var percentile = Math.min(100, configuration.get(ConfluenceSessionPool.CONF_HEDGE_PERCENTILE, 95));
+		if (recorded < MIN_SAMPLES || percentile <= 0) {
+			return -1;
+		}
+		final var sorted = Arrays.copyOf(latencies, (int) Math.min(recorded, SAMPLES));
+		Arrays.sort(sorted);
+		return Math.max(MIN_DELAY, sorted[(int) Math.ceil(sorted.length * percentile / 100d) - 1]);
+	}
+
+	/**
+	 * Return the maximal amount of retries of a transient failure.
+	 *
+	 * @return The maximal amount of retries.
+	 */
+	int getRetries() {
+		return configuration.get(ConfluenceSessionPool.CONF_RETRIES, 2);
+	}
+
+	/**
+	 * Return the delay before a retry: an exponential backoff with a full jitter, between <code>0</code> and
+	 * {@value #BACKOFF} milliseconds doubled for each failed attempt, up to 10 doublings.
+	 *
+	 * @param attempt The failed attempt, starting from <code>0</code>.
+	 * @return The delay in milliseconds.
+	 */
+	long getBackoff(final int attempt) {
+		return ThreadLocalRandom.current().nextLong((BACKOFF << Math.min(attempt, 10)) + 1);
+	}
+
+	/**
+	 * Refill the budget for an original request.
+	 */
+	synchronized void deposit() {
+		tokens = Math.min(MAX_TOKENS * 100, tokens + configuration.get(ConfluenceSessionPool.CONF_RETRY_BUDGET, 10));
+	}
+
+	/**
+	 * Take an extra request from the budget.
+	 *
+	 * @return <code>true</code> when the budget allows an extra request.
+	 */
+	synchronized boolean withdraw() {
+		if (tokens >= 100) {
+			tokens -= 100;
+			return true;
+		}
+		return false;
+	}
+}
@@ -0,0 +1,55 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.confluence;
+
+import java.time.Instant;
+import java.util.List;
+
+import org.ligoj.bootstrap.core.NamedBean;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * A Confluence page found in the local index.
+ */
+@Getter
+@Setter
+public class IndexedPage extends NamedBean<String> {
+
+	/**
+	 * SID
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The space key.
+	 */
+	private String space;
+
+	/**
+	 * The subscription linked to the space of this page.
+	 */
+	private int subscription;
+
+	/**
+	 * The page labels.
+	 */
+	private List<String> labels;
+
+	/**
+	 * The page URL.
+	 */
+	private String url;
+
+	/**
+	 * The last modification date, serialized as an ISO-8601 date. May be <code>null</code>.
+	 */
+	@JsonSerialize(using = ToStringSerializer.class)
+	private Instant lastModified;
+
+}
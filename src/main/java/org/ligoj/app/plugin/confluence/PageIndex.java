@@ -0,0 +1,210 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.confluence;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.commons.lang3.StringUtils;
+import org.ligoj.app.resource.NormalizeFormat;
+
+/**
+ * An in memory inverted index of the page titles and labels of the spaces. The terms are normalized, and the last term
+ * of a query matches as a prefix, so the search can be performed while typing. Each space remembers the last
+ * modification date of its pages, so the next indexing only fetches the delta.
+ */
+class PageIndex {
+
+	/**
+	 * An indexed page.
+	 *
+	 * @param space        The indexed space, see {@link ConfluenceCache#toKey(String, String)}.
+	 * @param id           The page identifier.
+	 * @param title        The page title.
+	 * @param labels       The page labels.
+	 * @param lastModified The last modification date. May be <code>null</code>.
+	 * @param url          The page URL.
+	 */
+	record Entry(String space, String id, String title, List<String> labels, Instant lastModified, String url) {
+	}
+
+	/**
+	 * The indexing state of a space.
+	 */
+	private static class SpaceState {
+		private final Map<String, Entry> pages = new HashMap<>();
+		private Instant since;
+		private long refreshed;
+	}
+
+	private final Map<String, SpaceState> spaces = new HashMap<>();
+
+	/**
+	 * Normalized term to the pages containing it. Sorted to resolve the prefixes.
+	 */
+	private final NavigableMap<String, Set<Entry>> terms = new TreeMap<>();
+
+	/**
+	 * Split a text into distinct normalized terms.
+	 *
+	 * @param text The text to split. May be <code>null</code>.
+	 * @return The distinct normalized terms.
+	 */
+	static Set<String> toTerms(final String text) {
+		return Arrays.stream(new NormalizeFormat().format(StringUtils.defaultString(text)).split("[^\\p{L}\\p{N}]+"))
+				.filter(StringUtils::isNotEmpty).collect(Collectors.toSet());
+	}
+
+	private Set<String> toTerms(final Entry entry) {
+		return Stream.concat(Stream.of(entry.title()), entry.labels().stream()).flatMap(t -> toTerms(t).stream())
+				.collect(Collectors.toSet());
+	}
+
+	/**
+	 * Add or replace a page.
+	 *
+	 * @param entry The page to index.
+	 */
+	synchronized void put(final Entry entry) {
+		final var state = spaces.computeIfAbsent(entry.space(), k -> new SpaceState());
+		unindex(state.pages.put(entry.id(), entry));
+		toTerms(entry).forEach(t -> terms.computeIfAbsent(t, k -> new HashSet<>()).add(entry));
+		if (entry.lastModified() != null && (state.since == null || entry.lastModified().isAfter(state.since))) {
+			state.since = entry.lastModified();
+		}
+	}
+
+	/**
+	 * Remove a page.
+	 *
+	 * @param space The indexed space, see {@link ConfluenceCache#toKey(String, String)}.
+	 * @param id    The page identifier.
+	 */
+	synchronized void remove(final String space, final String id) {
+		final var state = spaces.get(space);
+		if (state != null) {
+			unindex(state.pages.remove(id));
+		}
+	}
+
+	/**
+	 * Remove all pages of a space and its indexing state.
+	 *
+	 * @param space The indexed space, see {@link ConfluenceCache#toKey(String, String)}.
+	 */
+	synchronized void removeSpace(final String space) {
+		final var state = spaces.remove(space);
+		if (state != null) {
+			state.pages.values().forEach(this::unindex);
+		}
+	}
+
+	private void unindex(final Entry entry) {
+		if (entry != null) {
+			toTerms(entry).forEach(t -> {
+				final var pages = terms.get(t);
+				if (pages != null && pages.remove(entry) && pages.isEmpty()) {
+					terms.remove(t);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Return the last modification date of the indexed pages of a space.
+	 *
+	 * @param space The indexed space, see {@link ConfluenceCache#toKey(String, String)}.
+	 * @return The last modification date, or <code>null</code> when the space has never been indexed.
+	 */
+	synchronized Instant getSince(final String space) {
+		final var state = spaces.get(space);
+		return state == null ? null : state.since;
+	}
+
+	/**
+	 * Indicate the space has been indexed at the given time.
+	 *
+	 * @param space The indexed space, see {@link ConfluenceCache#toKey(String, String)}.
+	 * @param now   The indexing time, in milliseconds.
+	 */
+	synchronized void setRefreshed(final String space, final long now) {
+		spaces.computeIfAbsent(space, k -> new SpaceState()).refreshed = now;
+	}
+
+	/**
+	 * Return the last indexing time of a space.
+	 *
+	 * @param space The indexed space, see {@link ConfluenceCache#toKey(String, String)}.
+	 * @return The last indexing time in milliseconds, <code>0</code> when never indexed or invalidated.
+	 */
+	synchronized long getRefreshed(final String space) {
+		final var state = spaces.get(space);
+		return state == null ? 0 : state.refreshed;
+	}
+
+	/**
+	 * Invalidate the indexing time of a space, so the next search fetches the delta.
+	 *
+	 * @param space The indexed space, see {@link ConfluenceCache#toKey(String, String)}.
+	 */
+	void invalidate(final String space) {
+		setRefreshed(space, 0);
+	}
+
+	/**
+	 * Return the pages matching all terms of the query, the most recently modified first. The last term matches as a
+	 * prefix.
+	 *
+	 * @param query  The query.
+	 * @param filter The filter of the visible pages.
+	 * @param limit  The maximal amount of pages to return.
+	 * @return The matching pages.
+	 */
+	synchronized List<Entry> search(final String query, final Predicate<Entry> filter, final int limit) {
+		final var words = new NormalizeFormat().format(StringUtils.defaultString(query)).split("[^\\p{L}\\p{N}]+");
+		Set<Entry> result = null;
+		for (var i = 0; i < words.length && (result == null || !result.isEmpty()); i++) {
+			if (words[i].isEmpty()) {
+				continue;
+			}
+			final var matches = new HashSet<Entry>();
+			if (i == words.length - 1) {
+				terms.subMap(words[i], true, words[i] + Character.MAX_VALUE, true).values().forEach(matches::addAll);
+			} else {
+				matches.addAll(terms.getOrDefault(words[i], Set.of()));
+			}
+			if (result == null) {
+				result = matches;
+			} else {
+				result.retainAll(matches);
+			}
+		}
+		if (result == null) {
+			return List.of();
+		}
+		return result.stream().filter(filter)
+				.sorted(Comparator.comparing(Entry::lastModified, Comparator.nullsLast(Comparator.reverseOrder()))
+						.thenComparing(Entry::title))
+				.limit(limit).toList();
+	}
+
+	/**
+	 * Remove all pages.
+	 */
+	synchronized void clear() {
+		spaces.clear();
+		terms.clear();
+	}
+}
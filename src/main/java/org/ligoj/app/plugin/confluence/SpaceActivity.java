@@ -4,9 +4,13 @@
 package org.ligoj.app.plugin.confluence;
 
 import java.io.Serializable;
+import java.time.Instant;
 
 import org.ligoj.app.iam.SimpleUser;
 
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+
 import lombok.Getter;
 import lombok.Setter;
 
@@ -29,6 +33,13 @@ public class SpaceActivity implements Serializable {
 	 */
 	private String moment;
 
+	/**
+	 * The absolute moment of this activity, serialized as an ISO-8601 date. <code>null</code> when Confluence does not
+	 * expose it.
+	 */
+	@JsonSerialize(using = ToStringSerializer.class)
+	private Instant timestamp;
+
 	/**
 	 * Author, built either from the IAM provider if found, either from the
 	 * Confluence's data.
@@ -40,6 +51,11 @@ public class SpaceActivity implements Serializable {
 	 */
 	private String authorAvatar;
 
+	/**
+	 * Author avatar reference, served by {@link ConfluencePluginResource#getAvatar(String)}.
+	 */
+	private String avatar;
+
 	/**
 	 * The related updated page name
 	 */
@@ -0,0 +1,66 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.confluence;
+
+import java.io.Serializable;
+import java.time.Instant;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * A compact Confluence activity: the author is reduced to its identifier and display name, and the avatar is a
+ * reference instead of the image bytes.
+ */
+@Getter
+@Setter
+public class SpaceActivitySummary implements Serializable {
+
+	/**
+	 * SID
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The raw moment as Confluence has calculated.
+	 */
+	private String moment;
+
+	/**
+	 * The absolute moment of this activity, serialized as an ISO-8601 date. <code>null</code> when Confluence does not
+	 * expose it.
+	 */
+	@JsonSerialize(using = ToStringSerializer.class)
+	private Instant timestamp;
+
+	/**
+	 * Author login.
+	 */
+	private String author;
+
+	/**
+	 * Author display name.
+	 */
+	private String authorName;
+
+	/**
+	 * Author avatar reference, served by {@link ConfluencePluginResource#getAvatar(String)}. <code>null</code> when
+	 * there is no custom avatar.
+	 */
+	private String avatar;
+
+	/**
+	 * The related updated page name
+	 */
+	private String page;
+
+	/**
+	 * The related updated page URL
+	 */
+	private String pageUrl;
+
+}
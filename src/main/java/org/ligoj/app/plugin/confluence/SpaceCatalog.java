@@ -0,0 +1,219 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.confluence;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang3.StringUtils;
+import org.ligoj.app.resource.NormalizeFormat;
+
+/**
+ * A compact catalog of all the spaces of a node, including the personal ones. The spaces are not stored as beans, but
+ * packed in UTF-8 byte arrays addressed by primitive offsets, with deduplicated names. The entries are sorted by
+ * normalized name, so a scan returns the matching spaces already ordered.
+ * <p>
+ * The packed part is immutable. The spaces created, updated or removed since the build are kept in a small overlay
+ * until the next build.
+ */
+class SpaceCatalog {
+
+	/**
+	 * Separator of the key and the name within the normalized text of an entry. Not produced by the normalization.
+	 */
+	private static final byte SEPARATOR = '\n';
+
+	private final int size;
+
+	/**
+	 * Packed keys, the key <code>i</code> is within <code>[keyOffsets[i], keyOffsets[i + 1])</code>.
+	 */
+	private final byte[] keys;
+	private final int[] keyOffsets;
+
+	/**
+	 * Packed distinct names, the name of entry <code>i</code> starts at <code>nameOffsets[i]</code> and has
+	 * <code>nameLengths[i]</code> bytes.
+	 */
+	private final byte[] names;
+	private final int[] nameOffsets;
+	private final int[] nameLengths;
+
+	/**
+	 * Packed normalized "key\nname" texts, the text <code>i</code> is within
+	 * <code>[textOffsets[i], textOffsets[i + 1])</code>.
+	 */
+	private final byte[] texts;
+	private final int[] textOffsets;
+
+	/**
+	 * Build time in milliseconds.
+	 */
+	private final long built = System.currentTimeMillis();
+
+	/**
+	 * Spaces created or updated since the build, by key.
+	 */
+	private final Map<String, String> added = new ConcurrentHashMap<>();
+
+	/**
+	 * Spaces removed since the build.
+	 */
+	private final Set<String> removed = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Build a catalog from the given spaces.
+	 *
+	 * @param spaces The spaces, as key to name.
+	 */
+	SpaceCatalog(final Map<String, String> spaces) {
+		final var sorted = new ArrayList<String[]>(spaces.size());
+		spaces.forEach((k, n) -> sorted.add(new String[] { k, StringUtils.defaultString(n), normalize(k, n) }));
+		sorted.sort(Comparator.comparing((String[] e) -> e[2].substring(e[2].indexOf(SEPARATOR) + 1))
+				.thenComparing(e -> e[0]));
+		size = sorted.size();
+		keyOffsets = new int[size + 1];
+		nameOffsets = new int[size];
+		nameLengths = new int[size];
+		textOffsets = new int[size + 1];
+		final var keyBuffer = new ByteArrayOutputStream();
+		final var nameBuffer = new ByteArrayOutputStream();
+		final var textBuffer = new ByteArrayOutputStream();
+		final var distinct = new HashMap<String, Integer>();
+		for (var i = 0; i < size; i++) {
+			final var entry = sorted.get(i);
+			keyBuffer.writeBytes(entry[0].getBytes(StandardCharsets.UTF_8));
+			keyOffsets[i + 1] = keyBuffer.size();
+			final var name = entry[1].getBytes(StandardCharsets.UTF_8);
+			nameOffsets[i] = distinct.computeIfAbsent(entry[1], n -> {
+				final var offset = nameBuffer.size();
+				nameBuffer.writeBytes(name);
+				return offset;
+			});
+			nameLengths[i] = name.length;
+			textBuffer.writeBytes(entry[2].getBytes(StandardCharsets.UTF_8));
+			textOffsets[i + 1] = textBuffer.size();
+		}
+		keys = keyBuffer.toByteArray();
+		names = nameBuffer.toByteArray();
+		texts = textBuffer.toByteArray();
+	}
+
+	private static String normalize(final String key, final String name) {
+		return format(key) + (char) SEPARATOR + format(name);
+	}
+
+	private static String format(final String text) {
+		return new NormalizeFormat().format(StringUtils.defaultString(text));
+	}
+
+	/**
+	 * Return the amount of spaces of the packed part.
+	 *
+	 * @return The amount of spaces of the packed part.
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Return the build time.
+	 *
+	 * @return The build time in milliseconds.
+	 */
+	long getBuilt() {
+		return built;
+	}
+
+	/**
+	 * Return the amount of bytes used by the packed part.
+	 *
+	 * @return The amount of bytes used by the packed part.
+	 */
+	long getMemory() {
+		return keys.length + names.length + texts.length + (keyOffsets.length + textOffsets.length + size * 2L) * 4;
+	}
+
+	/**
+	 * Add or replace a space until the next build.
+	 *
+	 * @param key  The space key.
+	 * @param name The space name.
+	 */
+	void put(final String key, final String name) {
+		removed.remove(key);
+		added.put(key, StringUtils.defaultString(name));
+	}
+
+	/**
+	 * Remove a space until the next build.
+	 *
+	 * @param key The space key.
+	 */
+	void remove(final String key) {
+		added.remove(key);
+		removed.add(key);
+	}
+
+	/**
+	 * Return the spaces whose normalized key or name contains the given criteria, ordered by name.
+	 *
+	 * @param criteria The normalized criteria.
+	 * @param limit    The maximal amount of spaces to return.
+	 * @return The matching spaces.
+	 */
+	List<Space> findAll(final String criteria, final int limit) {
+		final var pattern = criteria.getBytes(StandardCharsets.UTF_8);
+		final var result = new ArrayList<Space>();
+		for (var i = 0; i < size && result.size() < limit; i++) {
+			if (contains(textOffsets[i], textOffsets[i + 1], pattern)) {
+				final var key = new String(keys, keyOffsets[i], keyOffsets[i + 1] - keyOffsets[i],
+						StandardCharsets.UTF_8);
+				if (!added.containsKey(key) && !removed.contains(key)) {
+					result.add(toSpace(key, new String(names, nameOffsets[i], nameLengths[i], StandardCharsets.UTF_8)));
+				}
+			}
+		}
+
+		// Merge the overlay
+		added.forEach((k, n) -> {
+			if (normalize(k, n).contains(criteria)) {
+				result.add(toSpace(k, n));
+			}
+		});
+		result.sort(Comparator.comparing((Space s) -> format(s.getName())).thenComparing(Space::getId));
+		return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+	}
+
+	/**
+	 * Indicate the text in the given range contains the pattern. The normalized criteria has no separator, so a match
+	 * never spans the key and the name.
+	 */
+	private boolean contains(final int from, final int to, final byte[] pattern) {
+		final var last = to - pattern.length;
+		next: for (var i = from; i <= last; i++) {
+			for (var j = 0; j < pattern.length; j++) {
+				if (texts[i + j] != pattern[j]) {
+					continue next;
+				}
+			}
+			return true;
+		}
+		return false;
+	}
+
+	private Space toSpace(final String key, final String name) {
+		final var space = new Space();
+		space.setId(key);
+		space.setName(name);
+		return space;
+	}
+}
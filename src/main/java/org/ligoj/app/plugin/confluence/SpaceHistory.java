@@ -0,0 +1,65 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.confluence;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * The edit counts of a subscribed space over a range of days, aggregated by buckets of the same amount of days.
+ */
+@Getter
+@Setter
+public class SpaceHistory implements Serializable {
+
+	/**
+	 * SID
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The subscription identifier.
+	 */
+	private int subscription;
+
+	/**
+	 * The space key.
+	 */
+	private String space;
+
+	/**
+	 * The first day of the first bucket, serialized as an ISO-8601 date.
+	 */
+	@JsonSerialize(using = ToStringSerializer.class)
+	private LocalDate from;
+
+	/**
+	 * The amount of days of each bucket. The last bucket may be shorter.
+	 */
+	private int step;
+
+	/**
+	 * The edit count of each bucket.
+	 */
+	private int[] counts;
+
+	/**
+	 * The edit count of the whole range.
+	 */
+	private int total;
+
+	/**
+	 * The last day with an edit, serialized as an ISO-8601 date. <code>null</code> when the space is dormant for the
+	 * whole retention, see {@link ConfluenceCache#CONF_HISTORY_DAYS}.
+	 */
+	@JsonSerialize(using = ToStringSerializer.class)
+	private LocalDate lastActive;
+
+}
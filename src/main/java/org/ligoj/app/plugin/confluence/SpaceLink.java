@@ -0,0 +1,28 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.confluence;
+
+import org.ligoj.bootstrap.core.NamedBean;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * A Confluence space link displayed in the global sidebar.
+ */
+@Getter
+@Setter
+public class SpaceLink extends NamedBean<String> {
+
+	/**
+	 * SID
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The space home URL.
+	 */
+	private String url;
+
+}
@@ -0,0 +1,39 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.confluence;
+
+import java.io.Serializable;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * The link result of a space within a bulk link.
+ */
+@Getter
+@Setter
+public class SpaceLinkResult implements Serializable {
+
+	/**
+	 * SID
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The space key.
+	 */
+	private String space;
+
+	/**
+	 * <code>true</code> when the space exists.
+	 */
+	private boolean linked;
+
+	/**
+	 * The failure code when the space is not linked: <code>confluence-space</code> when the space does not exist,
+	 * <code>confluence-connection</code> when it could not be read.
+	 */
+	private String error;
+
+}
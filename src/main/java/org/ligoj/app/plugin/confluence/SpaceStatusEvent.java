@@ -0,0 +1,43 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.confluence;
+
+import java.io.Serializable;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * The resolved status of a subscription, streamed as a server-sent event.
+ */
+@Getter
+@Setter
+public class SpaceStatusEvent implements Serializable {
+
+	/**
+	 * SID
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The subscription identifier.
+	 */
+	private int subscription;
+
+	/**
+	 * <code>true</code> when the space is available.
+	 */
+	private boolean up;
+
+	/**
+	 * The space and its activity. <code>null</code> when the space is not available.
+	 */
+	private SpaceSummary space;
+
+	/**
+	 * The failure message when the space is not available.
+	 */
+	private String error;
+
+}
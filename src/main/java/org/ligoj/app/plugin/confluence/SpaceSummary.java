@@ -0,0 +1,29 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.confluence;
+
+import org.ligoj.bootstrap.core.NamedBean;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * A compact Confluence space, as sent within the subscription status. The full details are available with
+ * {@link Space}.
+ */
+@Getter
+@Setter
+public class SpaceSummary extends NamedBean<String> {
+
+	/**
+	 * SID
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The last activity on Confluence.
+	 */
+	private SpaceActivitySummary activity;
+
+}
@@ -0,0 +1,189 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.confluence;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+import jakarta.ws.rs.ServiceUnavailableException;
+
+/**
+ * A small in memory cache where each entry expires after a time to live. Concurrent loads of the same key are
+ * coalesced: only one caller loads the value, the other ones wait for it within their own {@link Deadline}.
+ *
+ * @param <K> The key type.
+ * @param <V> The value type.
+ */
+class TimedCache<K, V> {
+
+	/**
+	 * A value loader.
+	 *
+	 * @param <K> The key type.
+	 * @param <V> The value type.
+	 */
+	@FunctionalInterface
+	interface Loader<K, V> {
+
+		/**
+		 * Load the value of the given key.
+		 *
+		 * @param key The key to load.
+		 * @return The loaded value.
+		 * @throws IOException When the value cannot be loaded.
+		 */
+		V load(K key) throws IOException;
+	}
+
+	/**
+	 * A cached value and its expiration time.
+	 */
+	private record Entry<V>(CompletableFuture<V> value, long expire) {
+
+		boolean isExpired(final long now) {
+			return expire <= now;
+		}
+	}
+
+	private final Map<K, Entry<V>> entries = new ConcurrentHashMap<>();
+
+	/**
+	 * The time to live in milliseconds, read for each new entry.
+	 */
+	private final LongSupplier ttl;
+
+	/**
+	 * Amount of entries triggering the purge of the expired ones.
+	 */
+	private final int maxEntries;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param ttl        The time to live in milliseconds, read for each new entry.
+	 * @param maxEntries Amount of entries triggering the purge of the expired ones.
+	 */
+	TimedCache(final LongSupplier ttl, final int maxEntries) {
+		this.ttl = ttl;
+		this.maxEntries = maxEntries;
+	}
+
+	/**
+	 * Return the cached value, or load it when missing or expired.
+	 *
+	 * @param key    The key.
+	 * @param loader The loader used when the value is not cached.
+	 * @return The value.
+	 * @throws IOException When the value cannot be loaded.
+	 * @throws ServiceUnavailableException When the value loaded by another caller is not available within the
+	 *                                     deadline of the current operation.
+	 */
+	V get(final K key, final Loader<K, V> loader) throws IOException {
+		final long now = System.currentTimeMillis();
+		final var fresh = new Entry<V>(new CompletableFuture<>(), now + ttl.getAsLong());
+		final var entry = entries.compute(key, (k, e) -> e == null || e.isExpired(now) ? fresh : e);
+		if (entry == fresh) {
+			purge(now);
+			try {
+				fresh.value().complete(loader.load(key));
+			} catch (final IOException | RuntimeException e) {
+				// Failures are not cached
+				entries.remove(key, fresh);
+				fresh.value().completeExceptionally(e);
+			}
+		}
+		try {
+			if (entry == fresh || Deadline.remaining() == Long.MAX_VALUE) {
+				return entry.value().join();
+			}
+
+			// Join the pending load within the deadline of the current operation
+			return entry.value().get(Math.max(0, Deadline.remaining()), TimeUnit.MILLISECONDS);
+		} catch (final CompletionException | ExecutionException e) {
+			if (e.getCause() instanceof IOException ioe) {
+				throw ioe;
+			}
+			if (e.getCause() instanceof RuntimeException re) {
+				throw re;
+			}
+			throw new IllegalStateException(e.getCause());
+		} catch (final TimeoutException e) {
+			// The value is still loading, for another caller
+			throw new ServiceUnavailableException();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ServiceUnavailableException();
+		}
+	}
+
+	/**
+	 * Return the cached value without loading it.
+	 *
+	 * @param key The key.
+	 * @return The cached value, or <code>null</code> when missing, expired or still loading.
+	 */
+	V getIfPresent(final K key) {
+		final var entry = entries.get(key);
+		if (entry == null || entry.isExpired(System.currentTimeMillis()) || !entry.value().isDone()
+				|| entry.value().isCompletedExceptionally()) {
+			return null;
+		}
+		return entry.value().join();
+	}
+
+	/**
+	 * Replace the cached value.
+	 *
+	 * @param key   The key.
+	 * @param value The new value.
+	 */
+	void put(final K key, final V value) {
+		final long now = System.currentTimeMillis();
+		purge(now);
+		entries.put(key, new Entry<>(CompletableFuture.completedFuture(value), now + ttl.getAsLong()));
+	}
+
+	/**
+	 * Evict the given key.
+	 *
+	 * @param key The key to evict.
+	 */
+	void evict(final K key) {
+		entries.remove(key);
+	}
+
+	/**
+	 * Evict the loaded entries whose value matches the given predicate.
+	 *
+	 * @param predicate The predicate of the values to evict.
+	 */
+	void evictIf(final Predicate<V> predicate) {
+		entries.values().removeIf(e -> e.value().isDone() && !e.value().isCompletedExceptionally()
+				&& predicate.test(e.value().join()));
+	}
+
+	/**
+	 * Evict all entries.
+	 */
+	void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * Remove the expired entries when the cache is full.
+	 */
+	private void purge(final long now) {
+		if (entries.size() > maxEntries) {
+			entries.values().removeIf(e -> e.isExpired(now));
+		}
+	}
+}
@@ -0,0 +1,61 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.confluence;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * The progress of the startup warm-up of the Confluence nodes.
+ */
+@Getter
+@Setter
+public class WarmupStatus implements Serializable {
+
+	/**
+	 * SID
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The start of the warm-up, serialized as an ISO-8601 date. <code>null</code> when the warm-up is disabled or not
+	 * yet started.
+	 */
+	@JsonSerialize(using = ToStringSerializer.class)
+	private Instant start;
+
+	/**
+	 * The end of the warm-up, serialized as an ISO-8601 date. <code>null</code> while running.
+	 */
+	@JsonSerialize(using = ToStringSerializer.class)
+	private Instant end;
+
+	/**
+	 * The amount of nodes to warm up.
+	 */
+	private int total;
+
+	/**
+	 * The amount of warmed up nodes, including the failed ones.
+	 */
+	private int completed;
+
+	/**
+	 * The Confluence version of each warmed up node.
+	 */
+	private Map<String, String> versions;
+
+	/**
+	 * The failure message of each failed node.
+	 */
+	private Map<String, String> failures;
+
+}
@@ -0,0 +1,99 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.confluence;
+
+import com.fasterxml.jackson.annotation.JsonAlias;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * A Confluence webhook event. Only the properties used by this plug-in are mapped.
+ */
+@Getter
+@Setter
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class WebhookEvent {
+
+	/**
+	 * The event name such as <code>page_updated</code>, <code>space_removed</code> or <code>user_updated</code>.
+	 */
+	private String event;
+
+	/**
+	 * The event timestamp in milliseconds.
+	 */
+	private Long timestamp;
+
+	/**
+	 * The login of the user at the origin of the event, or the one of the updated user.
+	 */
+	@JsonAlias({ "username", "userKey", "userName" })
+	private String user;
+
+	/**
+	 * The related page or blog post, for the content events.
+	 */
+	@JsonAlias("blog")
+	private Content page;
+
+	/**
+	 * The related space, for the space events.
+	 */
+	private SpaceRef space;
+
+	/**
+	 * A content reference.
+	 */
+	@Getter
+	@Setter
+	@JsonIgnoreProperties(ignoreUnknown = true)
+	public static class Content {
+
+		/**
+		 * The content identifier.
+		 */
+		private String id;
+
+		/**
+		 * The content title.
+		 */
+		private String title;
+
+		/**
+		 * The key of the space containing this content.
+		 */
+		private String spaceKey;
+
+		/**
+		 * The content URL.
+		 */
+		private String self;
+
+		/**
+		 * The last modification timestamp in milliseconds.
+		 */
+		private Long modificationDate;
+	}
+
+	/**
+	 * A space reference.
+	 */
+	@Getter
+	@Setter
+	@JsonIgnoreProperties(ignoreUnknown = true)
+	public static class SpaceRef {
+
+		/**
+		 * The space key.
+		 */
+		private String key;
+
+		/**
+		 * The space name.
+		 */
+		private String name;
+	}
+}
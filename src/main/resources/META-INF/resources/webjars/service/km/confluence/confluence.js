@@ -33,23 +33,59 @@ define(['cascade'], function ($cascade) {
 		},
 
 		/**
-		 * Display the last updated date + profile picture (ignore default.png)
+		 * Display a placeholder, replaced by the last updated date + profile picture once the activity is fetched.
 		 */
 		renderDetailsFeatures: function (subscription) {
-			var activity = subscription.data.space && subscription.data.space.activity;
+			var id = 'confluence-activity-' + subscription.id;
+			$.ajax({
+				dataType: 'json',
+				url: REST_PATH + 'service/km/confluence/space/' + subscription.id + '/activity',
+				type: 'GET',
+				global: false,
+				success: function (activity) {
+					$('#' + id).replaceWith(current.renderActivity(activity));
+				},
+				error: function () {
+					$('#' + id).remove();
+				}
+			});
+			return '<span id="' + id + '" class="confluence-avatar label label-default avatar"><i class="fas fa-circle-notch fa-spin"></i></span>';
+		},
+
+		/**
+		 * Render the last updated date + profile picture (ignore default.png)
+		 */
+		renderActivity: function (activity) {
 			if (activity) {
-				// Render activity page
-				var avatarContent;
-				if (activity.authorAvatar) {
-					avatarContent = '<img src="' + activity.authorAvatar + '"/>';
+				// Render activity page, the values from Confluence are escaped
+				var $avatar;
+				var authorName = activity.authorName || activity.author;
+				if (activity.avatar) {
+					$avatar = $('<img/>').attr('src', REST_PATH + 'service/km/confluence/avatar/' + encodeURIComponent(activity.avatar));
 				} else {
-					avatarContent = '<span class="">' + current.$main.toUser2Letters(activity.author) + '</span>';
+					$avatar = $('<span/>').text(current.toInitials(authorName));
 				}
-				return '<a target="#blank" data-toggle="tooltip" title="' + activity.page + '<br/>' + current.$main.getFullName(activity.author) + '<br>' + activity.moment + '" class="confluence-avatar label label-info avatar" href="' + activity.pageUrl + '">' + avatarContent + '</a>';
+				var title = [activity.page, authorName, activity.moment || new Date(activity.timestamp).toLocaleString()].map(current.escape).join('<br/>');
+				return $('<a target="#blank" data-toggle="tooltip" class="confluence-avatar label label-info avatar"></a>').attr('title', title).attr('href', activity.pageUrl).append($avatar);
 			}
 			return '';
 		},
 
+		/**
+		 * Return the HTML escaped text.
+		 */
+		escape: function (text) {
+			return $('<div/>').text(text || '').html();
+		},
+
+		/**
+		 * Return the two upper case initials of a display name.
+		 */
+		toInitials: function (name) {
+			var words = (name || '').split(/\s+/).filter(Boolean);
+			return ((words[0] || '').charAt(0) + (words.length > 1 ? words[words.length - 1].charAt(0) : (words[0] || '').charAt(1))).toUpperCase();
+		},
+
 		/**
 		 * Render a global without context.
 		 * @param {jquery} $target Target container where global will be rendered
@@ -76,15 +112,17 @@ define(['cascade'], function ($cascade) {
 			var $links = $view.find('.confluence-resolved-links').removeClass('hidden').empty();
 			$cascade.appendSpin($links.empty());
 
+			// A configured query is sent by the browser with the Confluence session of the user, as before
+			var query = configuration.parameters && configuration.parameters.query;
 			$.ajax({
 				contentType: 'application/json; charset=utf-8',
 				dataType: 'json',
-				url: configuration.node.parameters['service:km:confluence:url'] + '/' + configuration.parameters.query,
+				url: query ? configuration.node.parameters['service:km:confluence:url'] + '/' + query : REST_PATH + 'service/km/confluence/links/' + encodeURIComponent(configuration.node.id),
 				type: 'GET',
-				crossdomain: true,
+				crossdomain: !!query,
 				global: false,
 				success: function (data) {
-					current.fillConfluenceLinks(data, $links);
+					current.fillConfluenceLinks(query ? current.toLinks(data) : data, $links);
 				},
 				error: function () {
 					// Current user is not loaded, display a warning and login message
@@ -96,11 +134,22 @@ define(['cascade'], function ($cascade) {
 			});
 		},
 
-		fillConfluenceLinks: function (data, $target) {
-			var spaces = data.spaces;
+		/**
+		 * Return the links of the spaces returned by a configured query.
+		 */
+		toLinks: function (data) {
+			return (data.spaces || []).map(function (space) {
+				return {
+					name: space.name,
+					url: space.link[1].href
+				};
+			});
+		},
+
+		fillConfluenceLinks: function (spaces, $target) {
 			for (var index = 0; index < spaces.length; index++) {
 				var space = spaces[index];
-				$target.append($('<li><a target="blank" href="' + space.link[1].href + '"><i class="fas fa-chevron-right"></i>' + space.name + '</a></li>'));
+				$target.append($('<li/>').append($('<a target="blank"><i class="fas fa-chevron-right"></i></a>').attr('href', space.url).append(document.createTextNode(space.name || ''))));
 			}
 		}
 	};
@@ -6,6 +6,8 @@ define({
 	'service:km:confluence:url': 'URL',
 	'service:km:confluence:user': 'Utilisateur',
 	'service:km:confluence:password': 'Mot de passe',
+	'service:km:confluence:webhook-secret': 'Secret du webhook',
+	'service:km:confluence:catalog': 'Inclure les espaces personnels',
 	'service:km:confluence:tools:authentication': 'Vous devez être authentifié sur l\'outil pour afficher ce contenu.',
 	'service:km:confluence:tools:title': 'Support interne',
 	'service:km:confluence:tools:login': 'S\'authentifier',
@@ -7,6 +7,8 @@ define({
 		'service:km:confluence:url': 'URL',
 		'service:km:confluence:user': 'User',
 		'service:km:confluence:password': 'Password',
+		'service:km:confluence:webhook-secret': 'Webhook secret',
+		'service:km:confluence:catalog': 'Include personal spaces',
 		'service:km:confluence:tools:authentication': 'You must be authenticated on the tool to display this content.',
 		'service:km:confluence:tools:title': 'Internal Support',
 		'service:km:confluence:tools:login': 'Login',
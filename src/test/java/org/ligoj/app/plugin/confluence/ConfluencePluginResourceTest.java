@@ -4,18 +4,45 @@
 package org.ligoj.app.plugin.confluence;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
 import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
 
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+
+import javax.imageio.ImageIO;
 
 import jakarta.transaction.Transactional;
+import jakarta.ws.rs.ServiceUnavailableException;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Strings;
 import org.apache.hc.core5.http.HttpStatus;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
@@ -38,6 +65,7 @@ import org.ligoj.app.resource.node.ParameterValueResource;
 import org.ligoj.app.resource.subscription.SubscriptionResource;
 import org.ligoj.bootstrap.MatcherUtil;
 import org.ligoj.bootstrap.core.validation.ValidationJsonException;
+import org.ligoj.bootstrap.resource.system.configuration.ConfigurationResource;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.ClassPathResource;
@@ -45,6 +73,9 @@ import org.springframework.test.annotation.Rollback;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
+import com.github.tomakehurst.wiremock.client.ResponseDefinitionBuilder;
+import com.github.tomakehurst.wiremock.stubbing.Scenario;
+
 /**
  * Test class of {@link ConfluencePluginResource}
  */
@@ -53,6 +84,9 @@ import org.springframework.test.context.junit.jupiter.SpringExtension;
 @Rollback
 @Transactional
 class ConfluencePluginResourceTest extends AbstractServerTest {
+
+	private static final String KEY_SPACE = ConfluenceCache.toKey("http://localhost:8120", "SPACE");
+
 	@Autowired
 	private ConfluencePluginResource resource;
 
@@ -62,6 +96,18 @@ class ConfluencePluginResourceTest extends AbstractServerTest {
 	@Autowired
 	private ParameterValueResource pvResource;
 
+	@Autowired
+	private AvatarStore avatarStore;
+
+	@Autowired
+	private ConfluenceCache cache;
+
+	@Autowired
+	private ConfluenceSessionPool sessions;
+
+	@Autowired
+	private ConfigurationResource configuration;
+
 	protected int subscription;
 
 	@BeforeEach
@@ -70,6 +116,9 @@ class ConfluencePluginResourceTest extends AbstractServerTest {
 		persistSystemEntities();
 		persistEntities("csv", new Class<?>[]{Node.class, Parameter.class, Project.class, Subscription.class, ParameterValue.class, DelegateNode.class}, StandardCharsets.UTF_8);
 		this.subscription = getSubscription("Jupiter");
+		avatarStore.clear();
+		cache.clear();
+		sessions.clear();
 
 		// Coverage only
 		Assertions.assertEquals("service:km:confluence", resource.getKey());
@@ -106,11 +155,9 @@ class ConfluencePluginResourceTest extends AbstractServerTest {
 
 	@Test
 	void link() throws IOException {
-		prepareMockHome();
-		httpServer.stubFor(post(urlEqualTo("/dologin.action")).willReturn(aResponse().withStatus(HttpStatus.SC_MOVED_TEMPORARILY).withHeader("Location", "/")));
-
+		prepareMockLogin();
 		// Find space
-		httpServer.stubFor(get(urlEqualTo("/rest/api/space/SPACE")).willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(IOUtils.toString(new ClassPathResource("mock-server/confluence/confluence-space-SPACE.json").getInputStream(), StandardCharsets.UTF_8))));
+		httpServer.stubFor(get(urlEqualTo("/rest/api/space/SPACE")).willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(fixture("confluence-space-SPACE.json"))));
 		httpServer.start();
 
 		// Invoke create for an already created entity, since for now, there is
@@ -121,10 +168,71 @@ class ConfluencePluginResourceTest extends AbstractServerTest {
 	}
 
 	@Test
-	void linkNoSpace() {
-		prepareMockHome();
-		httpServer.stubFor(post(urlEqualTo("/dologin.action")).willReturn(aResponse().withStatus(HttpStatus.SC_MOVED_TEMPORARILY).withHeader("Location", "/")));
+	void linkAll() throws IOException {
+		prepareMockLogin();
+		httpServer.stubFor(get(urlEqualTo("/rest/api/space?limit=2&spaceKey=SPACE&spaceKey=MISSING")).willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody("{\"results\":[" + fixture("confluence-space-SPACE.json") + "]}")));
+		httpServer.start();
+
+		final var results = resource.linkAll("service:km:confluence:dig", List.of("SPACE", "MISSING", "SPACE"));
+		Assertions.assertEquals(2, results.size());
+		Assertions.assertEquals("SPACE", results.get(0).getSpace());
+		Assertions.assertTrue(results.get(0).isLinked());
+		Assertions.assertNull(results.get(0).getError());
+		Assertions.assertEquals("MISSING", results.get(1).getSpace());
+		Assertions.assertFalse(results.get(1).isLinked());
+		Assertions.assertEquals("confluence-space", results.get(1).getError());
+
+		// The validated space is not requested again when its subscription is linked
+		resource.link(subscription);
+		httpServer.verify(1, postRequestedFor(urlEqualTo("/dologin.action")));
+		httpServer.verify(0, getRequestedFor(urlEqualTo("/rest/api/space/SPACE")));
+	}
+
+	@Test
+	void linkAllNotAvailable() throws IOException {
+		prepareMockLogin();
+		httpServer.stubFor(get(urlPathEqualTo("/rest/api/space")).willReturn(aResponse().withStatus(HttpStatus.SC_NOT_FOUND)));
+		httpServer.start();
+
+		final var result = resource.linkAll("service:km:confluence:dig", List.of("SPACE")).get(0);
+		Assertions.assertEquals("SPACE", result.getSpace());
+		Assertions.assertFalse(result.isLinked());
+		Assertions.assertEquals("confluence-connection", result.getError());
+	}
+
+	@Test
+	void linkAllCaseInsensitive() throws IOException {
+		prepareMockLogin();
+		httpServer.stubFor(get(urlEqualTo("/rest/api/space?limit=1&spaceKey=space")).willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody("{\"results\":[" + fixture("confluence-space-SPACE.json") + "]}")));
+		httpServer.start();
+
+		final var result = resource.linkAll("service:km:confluence:dig", List.of("space")).get(0);
+		Assertions.assertEquals("SPACE", result.getSpace());
+		Assertions.assertTrue(result.isLinked());
+		Assertions.assertNull(result.getError());
+	}
+
+	@Test
+	void linkAllNoResults() throws IOException {
+		prepareMockLogin();
+		httpServer.stubFor(get(urlPathEqualTo("/rest/api/space")).willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody("{}")));
+		httpServer.start();
+
+		final var result = resource.linkAll("service:km:confluence:dig", List.of("SPACE")).get(0);
+		Assertions.assertEquals("SPACE", result.getSpace());
+		Assertions.assertFalse(result.isLinked());
+		Assertions.assertEquals("confluence-connection", result.getError());
+	}
+
+	@Test
+	void linkAllNoRight() throws IOException {
+		initSpringSecurityContext("any");
+		Assertions.assertTrue(resource.linkAll("service:km:confluence:dig", List.of("SPACE")).isEmpty());
+	}
 
+	@Test
+	void linkNoSpace() {
+		prepareMockLogin();
 		// Find space -> not found
 		httpServer.stubFor(get(urlEqualTo("/rest/api/space/SPACE")).willReturn(aResponse().withStatus(HttpStatus.SC_NOT_FOUND)));
 		httpServer.start();
@@ -133,9 +241,7 @@ class ConfluencePluginResourceTest extends AbstractServerTest {
 
 	@Test
 	void validateSpaceNotFound() {
-		prepareMockHome();
-		httpServer.stubFor(post(urlEqualTo("/dologin.action")).willReturn(aResponse().withStatus(HttpStatus.SC_MOVED_TEMPORARILY).withHeader("Location", "/")));
-
+		prepareMockLogin();
 		// Not find space
 		httpServer.stubFor(get(urlEqualTo("/rest/api/space/SPACE")).willReturn(aResponse().withStatus(HttpStatus.SC_NOT_FOUND)));
 		httpServer.start();
@@ -156,10 +262,358 @@ class ConfluencePluginResourceTest extends AbstractServerTest {
 	}
 
 	@Test
-	void validateSpaceJSonError() {
-		prepareMockHome();
-		httpServer.stubFor(post(urlEqualTo("/dologin.action")).willReturn(aResponse().withStatus(HttpStatus.SC_MOVED_TEMPORARILY).withHeader("Location", "/")));
+	void validateSpaceActivityTimestamp() throws IOException {
+		prepareMockSpaceActivity();
+		httpServer.start();
+
+		final var parameters = pvResource.getNodeParameters("service:km:confluence:dig");
+		parameters.put(ConfluencePluginResource.PARAMETER_SPACE, "SPACE");
+		final var activity = resource.validateSpace(parameters).getActivity();
+		Assertions.assertEquals("updated 5 minutes ago", activity.getMoment());
+		Assertions.assertEquals(Instant.parse("2015-04-08T06:30:00Z"), activity.getTimestamp());
+	}
+
+	@Test
+	void validateSpaceActivityTimestampMarkup() throws IOException {
+		prepareMockSpace();
+		httpServer.stubFor(get(urlEqualTo("/plugins/recently-updated/changes.action?theme=social&pageSize=1&spaceKeys=SPACE")).willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(fixture("confluence-space-SPACE-changes-datetime.html"))));
+		httpServer.start();
+
+		final var parameters = pvResource.getNodeParameters("service:km:confluence:dig");
+		parameters.put(ConfluencePluginResource.PARAMETER_SPACE, "SPACE");
+		final var activity = checkSpaceActivity(resource.validateSpace(parameters)).getActivity();
+		Assertions.assertEquals(Instant.parse("2015-04-07T08:12:13Z"), activity.getTimestamp());
+		httpServer.verify(0, getRequestedFor(urlEqualTo("/rest/api/content/1?expand=version")));
+	}
+
+	@Test
+	void validateSpaceActivityNoTimestamp() throws IOException {
+		prepareMockSpace();
+		httpServer.stubFor(get(urlEqualTo("/plugins/recently-updated/changes.action?theme=social&pageSize=1&spaceKeys=SPACE")).willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(fixture("confluence-space-SPACE-changes.html"))));
+		httpServer.stubFor(get(urlEqualTo("/rest/api/content/1?expand=version")).willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody("{error_json}")));
+		httpServer.start();
+
+		final var parameters = pvResource.getNodeParameters("service:km:confluence:dig");
+		parameters.put(ConfluencePluginResource.PARAMETER_SPACE, "SPACE");
+		Assertions.assertNull(checkSpaceActivity(resource.validateSpace(parameters)).getActivity().getTimestamp());
+	}
+
+	@Test
+	void parseTimestamp() {
+		Assertions.assertEquals(Instant.ofEpochMilli(1428394333000L), resource.parseTimestamp("1428394333000"));
+		Assertions.assertEquals(Instant.parse("2015-04-07T08:12:13Z"), resource.parseTimestamp("2015-04-07T10:12:13.000+02:00"));
+		Assertions.assertNull(resource.parseTimestamp("yesterday"));
+		Assertions.assertNull(resource.parseTimestamp("99999999999999999999"));
+		Assertions.assertNull(resource.parseTimestamp(null));
+	}
+
+	@Test
+	void validateSpaceSessionReused() throws IOException {
+		prepareMockSpaceActivity();
+		httpServer.start();
+
+		final var parameters = pvResource.getNodeParameters("service:km:confluence:dig");
+		parameters.put(ConfluencePluginResource.PARAMETER_SPACE, "SPACE");
+		checkSpaceActivity(resource.validateSpace(parameters));
+		resource.link(subscription);
+		httpServer.verify(1, postRequestedFor(urlEqualTo("/dologin.action")));
+
+		// A new session is authenticated after an eviction, the cached existence is evicted too to reach Confluence
+		sessions.evict(parameters);
+		cache.spaces.clear();
+		resource.link(subscription);
+		httpServer.verify(2, postRequestedFor(urlEqualTo("/dologin.action")));
+	}
+
+	@Test
+	void validateSpaceDeadline() throws IOException {
+		prepareMockSpaceActivity();
+		httpServer.stubFor(get(urlEqualTo("/plugins/recently-updated/changes.action?theme=social&pageSize=1&spaceKeys=SPACE")).willReturn(aResponse().withStatus(HttpStatus.SC_OK).withFixedDelay(3000).withBody("")));
+		httpServer.start();
+
+		final var parameters = pvResource.getNodeParameters("service:km:confluence:dig");
+		parameters.put(ConfluencePluginResource.PARAMETER_SPACE, "SPACE");
+		try (var deadline = Deadline.start(1000)) {
+			// The activity is skipped, only the space is returned
+			final var space = resource.validateSpace(parameters);
+			checkSpace(space);
+			Assertions.assertNull(space.getActivity());
+		}
+
+		// The partial result is not cached
+		Assertions.assertNull(cache.activities.getIfPresent(ConfluenceCache.toKey("http://localhost:8120", "SPACE")));
+	}
+
+	@Test
+	void validateSpaceDeadlineExpired() throws IOException {
+		prepareMockSpaceActivity();
+		httpServer.start();
+
+		final var parameters = pvResource.getNodeParameters("service:km:confluence:dig");
+		parameters.put(ConfluencePluginResource.PARAMETER_SPACE, "SPACE");
+		checkSpaceActivity(resource.validateSpace(parameters));
+		try (var deadline = Deadline.start(-1)) {
+			// No more request, and the space is not reported as missing
+			Assertions.assertThrows(ServiceUnavailableException.class, () -> resource.validateSpace(parameters));
+		}
+		httpServer.verify(1, getRequestedFor(urlEqualTo("/rest/api/space/SPACE")));
+	}
+
+	@Test
+	void borrowDeadline() throws Exception {
+		prepareMockSpace();
+		httpServer.start();
+
+		// A lease does not hold a connection
+		final var parameters = subscriptionResource.getParametersNoCheck(subscription);
+		final var leases = new ArrayList<ConfluenceSessionPool.Lease>();
+		for (int i = 0; i < 6; i++) {
+			leases.add(sessions.borrow(parameters));
+		}
+		leases.forEach(ConfluenceSessionPool.Lease::close);
+
+		// Each request waits for a connection within the deadline
+		final var permits = sessions.getPermits(parameters);
+		permits.acquire(5);
+		try (var deadline = Deadline.start(50)) {
+			Assertions.assertThrows(ServiceUnavailableException.class, () -> resource.getSpaceSummary(parameters));
+		}
+		permits.release(5);
+		Assertions.assertEquals("SPACE", resource.getSpaceSummary(parameters).getId());
+	}
+
+	@Test
+	void borrowSingleLogin() throws IOException {
+		prepareMockSpace();
+		httpServer.start();
+
+		// The concurrent callers wait for a single authentication
+		final var parameters = pvResource.getNodeParameters("service:km:confluence:dig");
+		final var borrows = new ArrayList<CompletableFuture<ConfluenceSessionPool.Lease>>();
+		for (int i = 0; i < 5; i++) {
+			borrows.add(CompletableFuture.supplyAsync(() -> sessions.borrow(parameters)));
+		}
+		borrows.forEach(b -> b.join().close());
+		httpServer.verify(1, postRequestedFor(urlEqualTo("/dologin.action")));
+	}
+
+	@Test
+	void timedCacheJoinDeadline() throws Exception {
+		final var timedCache = new TimedCache<String, String>(() -> 60000, 10);
+		final var gate = new CompletableFuture<String>();
+		final var loading = new CountDownLatch(1);
+		final var owner = CompletableFuture.runAsync(() -> {
+			try {
+				timedCache.get("key", k -> {
+					loading.countDown();
+					return gate.join();
+				});
+			} catch (final IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+		loading.await();
+
+		// The pending load of the other caller is joined within the deadline only
+		try (var deadline = Deadline.start(50)) {
+			Assertions.assertThrows(ServiceUnavailableException.class, () -> timedCache.get("key", k -> "other"));
+		}
+		gate.complete("value");
+		owner.join();
+		Assertions.assertEquals("value", timedCache.get("key", k -> "other"));
+	}
+
+	private void prepareMockSpaceScenario(final ResponseDefinitionBuilder first) throws IOException {
+		prepareMockLogin();
+		httpServer.stubFor(get(urlEqualTo("/rest/api/space/SPACE")).inScenario("space").whenScenarioStateIs(Scenario.STARTED).willSetStateTo("next").willReturn(first));
+		httpServer.stubFor(get(urlEqualTo("/rest/api/space/SPACE")).inScenario("space").whenScenarioStateIs("next").willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(fixture("confluence-space-SPACE.json"))));
+		httpServer.start();
+	}
+
+	@Test
+	void getSpaceSummaryRetry() throws IOException {
+		prepareMockSpaceScenario(aResponse().withStatus(HttpStatus.SC_SERVICE_UNAVAILABLE));
+		final var parameters = subscriptionResource.getParametersNoCheck(subscription);
+		Assertions.assertEquals("SPACE", resource.getSpaceSummary(parameters).getId());
+		httpServer.verify(2, getRequestedFor(urlEqualTo("/rest/api/space/SPACE")));
+	}
+
+	@Test
+	void getSpaceSummaryRetryNoBudget() throws IOException {
+		prepareMockSpaceScenario(aResponse().withStatus(HttpStatus.SC_SERVICE_UNAVAILABLE));
+		final var parameters = subscriptionResource.getParametersNoCheck(subscription);
+		final var policy = sessions.getPolicy(parameters);
+		while (policy.withdraw()) {
+			// Consume the whole budget
+		}
+
+		// No retry, the space is considered as missing
+		Assertions.assertThrows(ValidationJsonException.class, () -> resource.getSpaceSummary(parameters));
+		httpServer.verify(1, getRequestedFor(urlEqualTo("/rest/api/space/SPACE")));
+	}
+
+	@Test
+	void getSpaceSummaryNotTransient() throws IOException {
+		prepareMockSpaceScenario(aResponse().withStatus(HttpStatus.SC_NOT_FOUND));
+		final var parameters = subscriptionResource.getParametersNoCheck(subscription);
+		Assertions.assertThrows(ValidationJsonException.class, () -> resource.getSpaceSummary(parameters));
+		httpServer.verify(1, getRequestedFor(urlEqualTo("/rest/api/space/SPACE")));
+	}
+
+	@Test
+	void getSpaceSummaryLoggedOut() throws IOException {
+		prepareMockSpaceScenario(aResponse().withStatus(HttpStatus.SC_UNAUTHORIZED));
+		final var parameters = subscriptionResource.getParametersNoCheck(subscription);
+		Assertions.assertEquals("SPACE", resource.getSpaceSummary(parameters).getId());
+
+		// The invalidated session is authenticated again, and the request is replayed once
+		httpServer.verify(2, postRequestedFor(urlEqualTo("/dologin.action")));
+		httpServer.verify(2, getRequestedFor(urlEqualTo("/rest/api/space/SPACE")));
+	}
+
+	@Test
+	void borrowLoginDeadlineExpired() throws IOException {
+		prepareMockSpace();
+		httpServer.start();
+		final var parameters = pvResource.getNodeParameters("service:km:confluence:dig");
+		try (var deadline = Deadline.start(-1)) {
+			// Not reported as a login failure
+			Assertions.assertThrows(ServiceUnavailableException.class, () -> sessions.borrow(parameters));
+		}
+		httpServer.verify(0, postRequestedFor(urlEqualTo("/dologin.action")));
+	}
+
+	@Test
+	void getSpaceSummaryHedged() throws IOException {
+		prepareMockSpaceScenario(aResponse().withStatus(HttpStatus.SC_OK).withFixedDelay(3000).withBody("{}"));
+		final var parameters = subscriptionResource.getParametersNoCheck(subscription);
+		final var policy = sessions.getPolicy(parameters);
+		for (int i = 0; i < HedgingPolicy.MIN_SAMPLES; i++) {
+			policy.record(10);
+		}
+
+		// The slow response is ignored, the duplicate wins
+		Assertions.assertEquals("SPACE", resource.getSpaceSummary(parameters).getId());
+		httpServer.verify(2, getRequestedFor(urlEqualTo("/rest/api/space/SPACE")));
+	}
+
+	@Test
+	void hedgingPolicy() {
+		final var policy = new HedgingPolicy(configuration);
+		Assertions.assertEquals(-1, policy.getHedgeDelay());
+		for (int i = 1; i <= HedgingPolicy.SAMPLES; i++) {
+			policy.record(i * 10L);
+		}
+		Assertions.assertEquals(950, policy.getHedgeDelay());
+		policy.record(2000);
+		Assertions.assertEquals(960, policy.getHedgeDelay());
+		checkBackoff(policy, 0, 100);
+		checkBackoff(policy, 3, 800);
+		checkBackoff(policy, 20, 102400);
+
+		// The budget is refilled by the original requests
+		for (int i = 0; i < HedgingPolicy.MAX_TOKENS; i++) {
+			Assertions.assertTrue(policy.withdraw());
+		}
+		Assertions.assertFalse(policy.withdraw());
+		for (int i = 0; i < 10; i++) {
+			policy.deposit();
+		}
+		Assertions.assertTrue(policy.withdraw());
+		Assertions.assertFalse(policy.withdraw());
+	}
+
+	/**
+	 * Check the retry delays of an attempt are spread up to their maximum, without exceeding it.
+	 */
+	private void checkBackoff(final HedgingPolicy policy, final int attempt, final long max) {
+		final var delays = IntStream.range(0, 1000).mapToLong(i -> policy.getBackoff(attempt)).summaryStatistics();
+		Assertions.assertTrue(delays.getMin() >= 0);
+		Assertions.assertTrue(delays.getMax() <= max);
+		Assertions.assertTrue(delays.getMax() > max / 2);
+	}
+
+	@Test
+	void deadline() {
+		Assertions.assertEquals(Long.MAX_VALUE, Deadline.remaining());
+		try (var outer = Deadline.start(1000)) {
+			try (var inner = Deadline.start(100000)) {
+				// A nested deadline cannot extend the enclosing one
+				Assertions.assertTrue(Deadline.remaining() <= 1000);
+			}
+			try (var inner = Deadline.start(-1)) {
+				Assertions.assertTrue(Deadline.isExpired());
+			}
+			Assertions.assertFalse(Deadline.isExpired());
+		}
+		Assertions.assertEquals(Long.MAX_VALUE, Deadline.remaining());
+	}
+
+	@Test
+	void activityHistory() {
+		final var history = new ActivityHistory(() -> 30);
+		final var now = Instant.now();
+		final var today = LocalDate.now(ZoneOffset.UTC);
+		Assertions.assertTrue(history.record(KEY_SPACE, now, false));
+
+		// The same edit observed twice is counted once
+		Assertions.assertFalse(history.record(KEY_SPACE, now, false));
+		Assertions.assertTrue(history.record(KEY_SPACE, now.minusMillis(1), false));
+
+		// Older than the raw window, only accepted by a backfill
+		final var old = now.minus(10, ChronoUnit.DAYS);
+		Assertions.assertFalse(history.record(KEY_SPACE, old, false));
+		Assertions.assertTrue(history.record(KEY_SPACE, old, true));
+
+		// Older than the retention
+		Assertions.assertFalse(history.record(KEY_SPACE, now.minus(40, ChronoUnit.DAYS), true));
+
+		final var counts = history.getCounts(KEY_SPACE, today.minusDays(11), today);
+		Assertions.assertEquals(12, counts.length);
+		Assertions.assertEquals(1, counts[11 - (int) (today.toEpochDay() - LocalDate.ofInstant(old, ZoneOffset.UTC).toEpochDay())]);
+		Assertions.assertEquals(3, Arrays.stream(counts).sum());
+		Assertions.assertEquals(today, history.getLastActive(KEY_SPACE));
+		Assertions.assertEquals(0, Arrays.stream(history.getCounts("any", today, today)).sum());
+		Assertions.assertNull(history.getLastActive("any"));
+		history.removeSpace(KEY_SPACE);
+		Assertions.assertNull(history.getLastActive(KEY_SPACE));
+	}
 
+	@Test
+	void findAllHistory() {
+		final var today = LocalDate.now(ZoneOffset.UTC);
+		final var now = Instant.now();
+		cache.history.record(KEY_SPACE, now, false);
+		cache.history.record(KEY_SPACE, now.minus(8, ChronoUnit.DAYS), true);
+		cache.history.record(KEY_SPACE, now.minus(9, ChronoUnit.DAYS), true);
+
+		final var histories = resource.findAllHistory(List.of(subscription, subscription), today.minusDays(13).toString(), null, 7);
+		Assertions.assertEquals(1, histories.size());
+		final var history = histories.getFirst();
+		Assertions.assertEquals(subscription, history.getSubscription());
+		Assertions.assertEquals("SPACE", history.getSpace());
+		Assertions.assertEquals(today.minusDays(13), history.getFrom());
+		Assertions.assertEquals(7, history.getStep());
+		Assertions.assertArrayEquals(new int[] { 2, 1 }, history.getCounts());
+		Assertions.assertEquals(3, history.getTotal());
+		Assertions.assertEquals(today, history.getLastActive());
+
+		// Default range: the last 90 days
+		Assertions.assertEquals(90, resource.findAllHistory(List.of(subscription), null, null, 1).getFirst().getCounts().length);
+	}
+
+	@Test
+	void findAllHistoryInvalid() {
+		final var ids = List.of(subscription);
+		MatcherUtil.assertThrows(Assertions.assertThrows(ValidationJsonException.class, () -> resource.findAllHistory(ids, "2025-13-01", null, 1)), "from", "date");
+		MatcherUtil.assertThrows(Assertions.assertThrows(ValidationJsonException.class, () -> resource.findAllHistory(ids, "2025-02-01", "2025-01-01", 1)), "from", "history-range");
+		MatcherUtil.assertThrows(Assertions.assertThrows(ValidationJsonException.class, () -> resource.findAllHistory(ids, "2020-01-01", "2025-01-01", 1)), "from", "history-range");
+		MatcherUtil.assertThrows(Assertions.assertThrows(ValidationJsonException.class, () -> resource.findAllHistory(ids, "2025-01-01", "2025-01-07", 8)), "step", "history-step");
+	}
+
+	@Test
+	void validateSpaceJSonError() {
+		prepareMockLogin();
 		// Find space -> JSON error
 		httpServer.stubFor(get(urlEqualTo("/rest/api/space/SPACE")).willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody("{error_json}")));
 		httpServer.start();
@@ -172,7 +626,7 @@ class ConfluencePluginResourceTest extends AbstractServerTest {
 	@Test
 	void validateSpaceActivityDefaultImage() throws IOException {
 		prepareMockSpace();
-		httpServer.stubFor(get(urlEqualTo("/plugins/recently-updated/changes.action?theme=social&pageSize=1&spaceKeys=SPACE")).willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(IOUtils.toString(new ClassPathResource("mock-server/confluence/confluence-space-SPACE-changes-default-avatar.html").getInputStream(), StandardCharsets.UTF_8))));
+		httpServer.stubFor(get(urlEqualTo("/plugins/recently-updated/changes.action?theme=social&pageSize=1&spaceKeys=SPACE")).willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(fixture("confluence-space-SPACE-changes-default-avatar.html"))));
 		httpServer.start();
 
 		final var parameters = pvResource.getNodeParameters("service:km:confluence:dig");
@@ -184,7 +638,7 @@ class ConfluencePluginResourceTest extends AbstractServerTest {
 	@Test
 	void validateSpaceActivityImageError() throws IOException {
 		prepareMockSpace();
-		httpServer.stubFor(get(urlEqualTo("/plugins/recently-updated/changes.action?theme=social&pageSize=1&spaceKeys=SPACE")).willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(IOUtils.toString(new ClassPathResource("mock-server/confluence/confluence-space-SPACE-changes.html").getInputStream(), StandardCharsets.UTF_8))));
+		httpServer.stubFor(get(urlEqualTo("/plugins/recently-updated/changes.action?theme=social&pageSize=1&spaceKeys=SPACE")).willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(fixture("confluence-space-SPACE-changes.html"))));
 		httpServer.start();
 
 		final var parameters = pvResource.getNodeParameters("service:km:confluence:dig");
@@ -199,7 +653,7 @@ class ConfluencePluginResourceTest extends AbstractServerTest {
 		prepareMockSpace();
 
 		// Activity
-		httpServer.stubFor(get(urlEqualTo("/plugins/recently-updated/changes.action?theme=social&pageSize=1&spaceKeys=SPACE")).willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(IOUtils.toString(new ClassPathResource("mock-server/confluence/confluence-space-SPACE-changes.html").getInputStream(), StandardCharsets.UTF_8))));
+		httpServer.stubFor(get(urlEqualTo("/plugins/recently-updated/changes.action?theme=social&pageSize=1&spaceKeys=SPACE")).willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(fixture("confluence-space-SPACE-changes.html"))));
 
 		// Avatar not found
 		httpServer.stubFor(get(urlEqualTo("/some/default.png")).willReturn(aResponse().withStatus(HttpStatus.SC_NOT_FOUND)));
@@ -218,7 +672,94 @@ class ConfluencePluginResourceTest extends AbstractServerTest {
 		httpServer.start();
 		final var checkSubscriptionStatus = resource.checkSubscriptionStatus(subscriptionResource.getParametersNoCheck(subscription));
 		Assertions.assertTrue(checkSubscriptionStatus.getStatus().isUp());
-		checkSpaceActivity((Space) checkSubscriptionStatus.getData().get("space"));
+		final var space = (SpaceSummary) checkSubscriptionStatus.getData().get("space");
+		Assertions.assertEquals("SPACE", space.getId());
+		Assertions.assertEquals("My Space Name", space.getName());
+
+		// The status only checks the existence of the space, and is cached
+		Assertions.assertNull(space.getActivity());
+		resource.checkSubscriptionStatus(subscriptionResource.getParametersNoCheck(subscription));
+		httpServer.verify(1, getRequestedFor(urlEqualTo("/rest/api/space/SPACE")));
+		httpServer.verify(0, getRequestedFor(urlEqualTo("/plugins/recently-updated/changes.action?theme=social&pageSize=1&spaceKeys=SPACE")));
+
+		// The activity is fetched separately
+		final var activity = resource.getSpaceActivity(subscription);
+		Assertions.assertEquals("user1", activity.getAuthor());
+		Assertions.assertNotNull(activity.getAuthorName());
+		Assertions.assertEquals("updated 5 minutes ago", activity.getMoment());
+		Assertions.assertEquals("My Page", activity.getPage());
+		Assertions.assertEquals("http://localhost:8120/display/SPACE/Page", activity.getPageUrl());
+
+		// The avatar is a reference to the stored image
+		final var avatar = resource.getAvatar(activity.getAvatar());
+		Assertions.assertEquals(HttpStatus.SC_OK, avatar.getStatus());
+		Assertions.assertEquals(48, ImageIO.read(new ByteArrayInputStream((byte[]) avatar.getEntity())).getWidth());
+	}
+
+	@Test
+	void validateSpaceActivityAvatarStored() throws IOException {
+		prepareMockSpaceActivity();
+		httpServer.start();
+
+		final var parameters = pvResource.getNodeParameters("service:km:confluence:dig");
+		parameters.put(ConfluencePluginResource.PARAMETER_SPACE, "SPACE");
+		checkSpaceActivityAvatar(resource.validateSpace(parameters));
+		checkSpaceActivityAvatar(resource.validateSpace(parameters));
+
+		// The thumbnail is built once
+		httpServer.verify(1, getRequestedFor(urlEqualTo("/some/some.png")));
+	}
+
+	@Test
+	void resolveAvatarStoredOtherOwner() {
+		final var id = avatarStore.put("http://localhost:8120/some/some.png", new byte[]{1});
+
+		// Already stored for another owner, not fetched but still evicted with this owner
+		Assertions.assertEquals(id, avatarStore.resolve(null, "http://localhost:8120/some/some.png", "user2"));
+		Assertions.assertEquals(id, avatarStore.evict("user2"));
+		Assertions.assertNull(avatarStore.get(id));
+	}
+
+	@Test
+	void validateSpaceActivityAvatarTooLarge() throws IOException {
+		prepareMockSpaceActivity();
+		httpServer.stubFor(get(urlEqualTo("/some/some.png")).willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(new byte[AvatarStore.MAX_BYTES + 1])));
+		httpServer.start();
+
+		final var parameters = pvResource.getNodeParameters("service:km:confluence:dig");
+		parameters.put(ConfluencePluginResource.PARAMETER_SPACE, "SPACE");
+		final var activity = checkSpaceActivity(resource.validateSpace(parameters)).getActivity();
+		Assertions.assertNull(activity.getAuthorAvatar());
+		Assertions.assertNull(activity.getAvatar());
+	}
+
+	@Test
+	void toThumbnail() throws IOException {
+		final var avatars = new AvatarStore();
+		Assertions.assertNull(avatars.toThumbnail(null));
+		Assertions.assertNull(avatars.toThumbnail(new byte[]{1, 2, 3}));
+
+		// Small image keeps its size, but is converted to PNG
+		final var small = new ByteArrayOutputStream();
+		ImageIO.write(new BufferedImage(16, 32, BufferedImage.TYPE_INT_RGB), "jpg", small);
+		final var smallThumbnail = avatars.toThumbnail(small.toByteArray());
+		Assertions.assertEquals("PNG", new String(smallThumbnail, 1, 3, StandardCharsets.US_ASCII));
+		Assertions.assertEquals(16, ImageIO.read(new ByteArrayInputStream(smallThumbnail)).getWidth());
+		Assertions.assertEquals(32, ImageIO.read(new ByteArrayInputStream(smallThumbnail)).getHeight());
+
+		// A tiny file declaring a huge image is not decoded
+		final var header = ByteBuffer.allocate(17).put("IHDR".getBytes(StandardCharsets.US_ASCII)).putInt(100000).putInt(100000).put(new byte[]{8, 6, 0, 0, 0});
+		final var crc = new CRC32();
+		crc.update(header.array());
+		final var bomb = ByteBuffer.allocate(33).put(new byte[]{(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'}).putInt(13).put(header.array()).putInt((int) crc.getValue());
+		Assertions.assertNull(avatars.toThumbnail(bomb.array()));
+
+		// Large image is downscaled, keeping the ratio
+		final var large = new ByteArrayOutputStream();
+		ImageIO.write(new BufferedImage(200, 100, BufferedImage.TYPE_INT_ARGB), "png", large);
+		final var thumbnail = ImageIO.read(new ByteArrayInputStream(avatars.toThumbnail(large.toByteArray())));
+		Assertions.assertEquals(48, thumbnail.getWidth());
+		Assertions.assertEquals(24, thumbnail.getHeight());
 	}
 
 	@Test
@@ -227,24 +768,63 @@ class ConfluencePluginResourceTest extends AbstractServerTest {
 		httpServer.start();
 		final var checkSubscriptionStatus = resource.checkSubscriptionStatus(subscriptionResource.getParametersNoCheck(subscription));
 		Assertions.assertTrue(checkSubscriptionStatus.getStatus().isUp());
-		final var space = (Space) checkSubscriptionStatus.getData().get("space");
-		checkSpace(space);
+		final var space = (SpaceSummary) checkSubscriptionStatus.getData().get("space");
+		Assertions.assertEquals("SPACE", space.getId());
 		Assertions.assertNull(space.getActivity());
+		Assertions.assertNull(resource.getSpaceActivity(subscription));
 	}
 
-	private void prepareMockSpace() throws IOException {
-		prepareMockHome();
-		httpServer.stubFor(post(urlEqualTo("/dologin.action")).willReturn(aResponse().withStatus(HttpStatus.SC_MOVED_TEMPORARILY).withHeader("Location", "/")));
+	@Test
+	void streamStatus() throws IOException {
+		prepareMockSpaceActivity();
+		httpServer.start();
+
+		final var output = new ByteArrayOutputStream();
+		resource.streamStatus(List.of(subscription, subscription, -1)).write(output);
+		final var events = output.toString(StandardCharsets.UTF_8);
+
+		// One event per distinct subscription, then the summary
+		Assertions.assertEquals(2, StringUtils.countMatches(events, "event: status\n"));
+		Assertions.assertTrue(events.contains("\"subscription\":" + subscription));
+		Assertions.assertTrue(events.contains("\"up\":true"));
+		Assertions.assertTrue(events.contains("\"name\":\"My Space Name\""));
+		Assertions.assertTrue(events.contains("\"subscription\":-1"));
+		Assertions.assertTrue(events.contains("\"up\":false"));
+		Assertions.assertTrue(events.endsWith("\n\n"));
+		Assertions.assertTrue(events.contains("event: summary\n"));
+		Assertions.assertTrue(events.contains("\"total\":2"));
+		Assertions.assertTrue(events.contains("\"down\":1"));
+
+		// Only the cached existence of the spaces, not their activity
+		httpServer.verify(0, getRequestedFor(urlPathEqualTo("/plugins/recently-updated/changes.action")));
+	}
+
+	@Test
+	void getSpace() throws IOException {
+		prepareMockSpaceActivity();
+		httpServer.start();
+		checkSpaceActivityAvatar(resource.getSpace(subscription));
+	}
 
+	@Test
+	void getAvatarNotFound() {
+		Assertions.assertEquals(HttpStatus.SC_NOT_FOUND, resource.getAvatar("any").getStatus());
+	}
+
+	private void prepareMockSpace() throws IOException {
+		prepareMockLogin();
 		// Find space
-		httpServer.stubFor(get(urlEqualTo("/rest/api/space/SPACE")).willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(IOUtils.toString(new ClassPathResource("mock-server/confluence/confluence-space-SPACE.json").getInputStream(), StandardCharsets.UTF_8))));
+		httpServer.stubFor(get(urlEqualTo("/rest/api/space/SPACE")).willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(fixture("confluence-space-SPACE.json"))));
 	}
 
 	private void prepareMockSpaceActivity() throws IOException {
 		prepareMockSpace();
 
 		// Activity
-		httpServer.stubFor(get(urlEqualTo("/plugins/recently-updated/changes.action?theme=social&pageSize=1&spaceKeys=SPACE")).willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(IOUtils.toString(new ClassPathResource("mock-server/confluence/confluence-space-SPACE-changes.html").getInputStream(), StandardCharsets.UTF_8))));
+		httpServer.stubFor(get(urlEqualTo("/plugins/recently-updated/changes.action?theme=social&pageSize=1&spaceKeys=SPACE")).willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(fixture("confluence-space-SPACE-changes.html"))));
+
+		// Updated page version
+		httpServer.stubFor(get(urlEqualTo("/rest/api/content/1?expand=version")).willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(fixture("confluence-content-1.json"))));
 
 		// Avatar
 		httpServer.stubFor(get(urlEqualTo("/some/some.png")).willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(IOUtils.toByteArray(new ClassPathResource("mock-server/confluence/default.png").getInputStream()))));
@@ -254,9 +834,7 @@ class ConfluencePluginResourceTest extends AbstractServerTest {
 	void checkStatus() throws IOException {
 		prepareMockVersion();
 
-		prepareMockHome();
-		httpServer.stubFor(post(urlEqualTo("/dologin.action")).willReturn(aResponse().withStatus(HttpStatus.SC_MOVED_TEMPORARILY).withHeader("Location", "/")));
-
+		prepareMockLogin();
 		// Administration access
 		httpServer.stubFor(get(urlEqualTo("/plugins/servlet/upm")).willReturn(aResponse().withStatus(HttpStatus.SC_OK)));
 		httpServer.start();
@@ -267,9 +845,7 @@ class ConfluencePluginResourceTest extends AbstractServerTest {
 	void checkStatusNotAdmin() throws IOException {
 		prepareMockVersion();
 
-		prepareMockHome();
-		httpServer.stubFor(post(urlEqualTo("/dologin.action")).willReturn(aResponse().withStatus(HttpStatus.SC_MOVED_TEMPORARILY).withHeader("Location", "/")));
-
+		prepareMockLogin();
 		// Administration access failed
 		httpServer.stubFor(get(urlEqualTo("/plugins/servlet/upm")).willReturn(aResponse().withStatus(HttpStatus.SC_MOVED_TEMPORARILY).withHeader("Location", "/")));
 		httpServer.start();
@@ -298,7 +874,7 @@ class ConfluencePluginResourceTest extends AbstractServerTest {
 
 	private void prepareMockVersion() throws IOException {
 		// Version
-		httpServer.stubFor(get(urlEqualTo("/forgotuserpassword.action")).willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(IOUtils.toString(new ClassPathResource("mock-server/confluence/confluence-forgotuserpassword.action").getInputStream(), StandardCharsets.UTF_8))));
+		httpServer.stubFor(get(urlEqualTo("/forgotuserpassword.action")).willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(fixture("confluence-forgotuserpassword.action"))));
 	}
 
 	@Test
@@ -316,6 +892,18 @@ class ConfluencePluginResourceTest extends AbstractServerTest {
 		httpServer.stubFor(get(urlEqualTo("/dologin.action")).willReturn(aResponse().withStatus(HttpStatus.SC_OK)));
 	}
 
+	/**
+	 * Mock the login page and a successful authentication.
+	 */
+	private void prepareMockLogin() {
+		prepareMockHome();
+		httpServer.stubFor(post(urlEqualTo("/dologin.action")).willReturn(aResponse().withStatus(HttpStatus.SC_MOVED_TEMPORARILY).withHeader("Location", "/")));
+	}
+
+	private String fixture(final String name) throws IOException {
+		return IOUtils.toString(new ClassPathResource("mock-server/confluence/" + name).getInputStream(), StandardCharsets.UTF_8);
+	}
+
 	@Test
 	void checkStatusNotAccess() {
 		httpServer.stubFor(get(urlEqualTo("/forgotuserpassword.action")).willReturn(aResponse().withStatus(HttpStatus.SC_NOT_FOUND)));
@@ -330,11 +918,9 @@ class ConfluencePluginResourceTest extends AbstractServerTest {
 
 	@Test
 	void findAllByName() throws IOException {
-		prepareMockHome();
-		httpServer.stubFor(post(urlEqualTo("/dologin.action")).willReturn(aResponse().withStatus(HttpStatus.SC_MOVED_TEMPORARILY).withHeader("Location", "/")));
-
-		httpServer.stubFor(get(urlEqualTo("/rest/api/space?type=global&limit=100&start=0")).willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(IOUtils.toString(new ClassPathResource("mock-server/confluence/confluence-spaces.json").getInputStream(), StandardCharsets.UTF_8))));
-		httpServer.stubFor(get(urlEqualTo("/rest/api/space?type=global&limit=100&start=100")).willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(IOUtils.toString(new ClassPathResource("mock-server/confluence/confluence-spaces2.json").getInputStream(), StandardCharsets.UTF_8))));
+		prepareMockLogin();
+		httpServer.stubFor(get(urlEqualTo("/rest/api/space?type=global&limit=100&start=0")).willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(fixture("confluence-spaces.json"))));
+		httpServer.stubFor(get(urlEqualTo("/rest/api/space?type=global&limit=100&start=25")).willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(fixture("confluence-spaces2.json"))));
 		httpServer.start();
 
 		final var projects = resource.findAllByName("service:km:confluence:dig", "p");
@@ -342,13 +928,109 @@ class ConfluencePluginResourceTest extends AbstractServerTest {
 		checkSpace(projects.get(4));
 	}
 
+	private void prepareMockCatalog() throws IOException {
+		prepareMockLogin();
+		httpServer.stubFor(get(urlEqualTo("/rest/api/space?limit=500&start=0")).willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(fixture("confluence-spaces.json"))));
+		httpServer.stubFor(get(urlEqualTo("/rest/api/space?limit=500&start=25")).willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(fixture("confluence-spaces-personal.json"))));
+		httpServer.start();
+
+		// Enable the catalog mode of this node
+		final var value = new ParameterValue();
+		value.setParameter(em.find(Parameter.class, ConfluencePluginResource.PARAMETER_CATALOG));
+		value.setNode(em.find(Node.class, "service:km:confluence:dig"));
+		value.setData("true");
+		em.persist(value);
+		em.flush();
+	}
+
 	@Test
-	void findAllByNameNotFound() throws IOException {
-		prepareMockHome();
-		httpServer.stubFor(post(urlEqualTo("/dologin.action")).willReturn(aResponse().withStatus(HttpStatus.SC_MOVED_TEMPORARILY).withHeader("Location", "/")));
+	void findAllByNameCatalog() throws IOException {
+		prepareMockCatalog();
+		final var catalog = resource.buildCatalog(pvResource.getNodeParameters("service:km:confluence:dig"));
+		Assertions.assertEquals(28, catalog.size());
+		Assertions.assertTrue(catalog.getMemory() > 0);
+		cache.catalogs.put("service:km:confluence:dig", catalog);
+
+		// Personal spaces are included, ordered by name
+		final var spaces = resource.findAllByName("service:km:confluence:dig", "DOE");
+		Assertions.assertEquals(2, spaces.size());
+		Assertions.assertEquals("~jdoe", spaces.get(0).getId());
+		Assertions.assertEquals("John Doe", spaces.get(0).getName());
+		Assertions.assertEquals("~jdoe2", spaces.get(1).getId());
+		Assertions.assertEquals("John Doe", spaces.get(1).getName());
+		Assertions.assertEquals("~amartin", resource.findAllByName("service:km:confluence:dig", "anais").get(0).getId());
+		checkSpace(resource.findAllByName("service:km:confluence:dig", "my space").get(0));
+		Assertions.assertEquals(10, resource.findAllByName("service:km:confluence:dig", "p").size());
+
+		// The catalog is built once
+		resource.findAllByName("service:km:confluence:dig", "p");
+		httpServer.verify(1, getRequestedFor(urlEqualTo("/rest/api/space?limit=500&start=25")));
+	}
+
+	@Test
+	void refreshCatalogFailedPage() throws IOException {
+		prepareMockCatalog();
+		final var parameters = pvResource.getNodeParameters("service:km:confluence:dig");
+		resource.refreshCatalog("service:km:confluence:dig", parameters);
+		final var catalog = cache.catalogs.get("service:km:confluence:dig");
+		Assertions.assertEquals(28, catalog.size());
+
+		// A failed page is not the end of the spaces, the previous catalog is kept
+		httpServer.stubFor(get(urlEqualTo("/rest/api/space?limit=500&start=25")).willReturn(aResponse().withStatus(HttpStatus.SC_INTERNAL_SERVER_ERROR)));
+		Assertions.assertThrows(IOException.class, () -> resource.refreshCatalog("service:km:confluence:dig", parameters));
+		Assertions.assertSame(catalog, cache.catalogs.get("service:km:confluence:dig"));
+	}
+
+	@Test
+	void findAllByNameCatalogOverlay() throws IOException {
+		prepareMockCatalog();
+		final var catalog = resource.buildCatalog(pvResource.getNodeParameters("service:km:confluence:dig"));
+		cache.catalogs.put("service:km:confluence:dig", catalog);
+		catalog.put("~zdoe", "Zoé Doe");
+		catalog.put("~jdoe2", "Jane Doe");
+		catalog.remove("~jdoe");
+		Assertions.assertEquals(List.of("~jdoe2", "~zdoe"), resource.findAllByName("service:km:confluence:dig", "doe").stream().map(Space::getId).toList());
+		Assertions.assertEquals("Jane Doe", resource.findAllByName("service:km:confluence:dig", "jdoe").get(0).getName());
+	}
+
+	@Test
+	void findAllByNameCatalogNotBuilt() throws IOException {
+		httpServer.stubFor(get(urlEqualTo("/rest/api/space?type=global&limit=100&start=0")).willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(fixture("confluence-spaces2.json"))));
+		prepareMockCatalog();
+
+		// Only the global spaces until the catalog is built in background
+		Assertions.assertEquals(1, resource.findAllByName("service:km:confluence:dig", "xxx").size());
+	}
+
+	@Test
+	void findAllByNameSingleLogin() throws IOException {
+		prepareMockLogin();
+		httpServer.stubFor(get(urlEqualTo("/rest/api/space?type=global&limit=100&start=0")).willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(fixture("confluence-spaces.json"))));
+		httpServer.stubFor(get(urlEqualTo("/rest/api/space?type=global&limit=100&start=25")).willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(fixture("confluence-spaces2.json"))));
+		httpServer.start();
+
+		// Both pages are read within the same session
+		Assertions.assertEquals(1, resource.findAllByName("service:km:confluence:dig", "xxx").size());
+		httpServer.verify(1, postRequestedFor(urlEqualTo("/dologin.action")));
+		httpServer.verify(1, getRequestedFor(urlEqualTo("/rest/api/space?type=global&limit=100&start=25")));
+	}
 
-		httpServer.stubFor(get(urlEqualTo("/rest/api/space?type=global&limit=100&start=0")).willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(IOUtils.toString(new ClassPathResource("mock-server/confluence/confluence-spaces.json").getInputStream(), StandardCharsets.UTF_8))));
-		httpServer.stubFor(get(urlEqualTo("/rest/api/space?type=global&limit=100&start=100")).willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(IOUtils.toString(new ClassPathResource("mock-server/confluence/confluence-spaces2.json").getInputStream(), StandardCharsets.UTF_8))));
+	@Test
+	void findAllByNameFailedPage() throws IOException {
+		prepareMockLogin();
+		httpServer.stubFor(get(urlEqualTo("/rest/api/space?type=global&limit=100&start=0")).willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(fixture("confluence-spaces.json"))));
+		httpServer.stubFor(get(urlEqualTo("/rest/api/space?type=global&limit=100&start=25")).willReturn(aResponse().withStatus(HttpStatus.SC_INTERNAL_SERVER_ERROR)));
+		httpServer.start();
+
+		// A failed middle page is not the end of the listing
+		Assertions.assertThrows(IOException.class, () -> resource.findAllByName("service:km:confluence:dig", "xxx"));
+	}
+
+	@Test
+	void findAllByNameNotFound() throws IOException {
+		prepareMockLogin();
+		httpServer.stubFor(get(urlEqualTo("/rest/api/space?type=global&limit=100&start=0")).willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(fixture("confluence-spaces.json"))));
+		httpServer.stubFor(get(urlEqualTo("/rest/api/space?type=global&limit=100&start=25")).willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(fixture("confluence-spaces2.json"))));
 		httpServer.start();
 
 		final var projects = resource.findAllByName("service:km:confluence:dig", "zzz");
@@ -363,12 +1045,27 @@ class ConfluencePluginResourceTest extends AbstractServerTest {
 	}
 
 	@Test
-	void findAllByNamePage2() throws IOException {
-		prepareMockHome();
-		httpServer.stubFor(post(urlEqualTo("/dologin.action")).willReturn(aResponse().withStatus(HttpStatus.SC_MOVED_TEMPORARILY).withHeader("Location", "/")));
+	void findAllByNameVisibilityCached() throws IOException {
+		prepareMockLogin();
+		httpServer.stubFor(get(urlEqualTo("/rest/api/space?type=global&limit=100&start=0")).willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(fixture("confluence-spaces.json"))));
+		httpServer.stubFor(get(urlEqualTo("/rest/api/space?type=global&limit=100&start=25")).willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(fixture("confluence-spaces2.json"))));
+		httpServer.start();
+		initSpringSecurityContext("any");
+		Assertions.assertTrue(resource.findAllByName("service:km:confluence:dig", "xxx").isEmpty());
+		Assertions.assertFalse(cache.visibleNodes.get(ConfluenceCache.toKey("any", "service:km:confluence:dig"), k -> true));
+
+		// The cached visibility is used until its expiration
+		cache.visibleNodes.put(ConfluenceCache.toKey("any", "service:km:confluence:dig"), true);
+		Assertions.assertEquals(1, resource.findAllByName("service:km:confluence:dig", "xxx").size());
+		cache.clear();
+		Assertions.assertTrue(resource.findAllByName("service:km:confluence:dig", "xxx").isEmpty());
+	}
 
-		httpServer.stubFor(get(urlEqualTo("/rest/api/space?type=global&limit=100&start=0")).willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(IOUtils.toString(new ClassPathResource("mock-server/confluence/confluence-spaces.json").getInputStream(), StandardCharsets.UTF_8))));
-		httpServer.stubFor(get(urlEqualTo("/rest/api/space?type=global&limit=100&start=100")).willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(IOUtils.toString(new ClassPathResource("mock-server/confluence/confluence-spaces2.json").getInputStream(), StandardCharsets.UTF_8))));
+	@Test
+	void findAllByNamePage2() throws IOException {
+		prepareMockLogin();
+		httpServer.stubFor(get(urlEqualTo("/rest/api/space?type=global&limit=100&start=0")).willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(fixture("confluence-spaces.json"))));
+		httpServer.stubFor(get(urlEqualTo("/rest/api/space?type=global&limit=100&start=25")).willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(fixture("confluence-spaces2.json"))));
 		httpServer.start();
 
 		final var projects = resource.findAllByName("service:km:confluence:dig", "xxx");
@@ -378,6 +1075,108 @@ class ConfluencePluginResourceTest extends AbstractServerTest {
 		Assertions.assertNull(projects.getFirst().getActivity());
 	}
 
+	@Test
+	void findAllActive() throws IOException {
+		prepareMockActivity();
+
+		final var spaces = resource.findAllActive("service:km:confluence:dig", 2, "count");
+		Assertions.assertEquals(2, spaces.size());
+		Assertions.assertEquals("SPACE", spaces.getFirst().getId());
+		Assertions.assertEquals("My Space Name", spaces.getFirst().getName());
+		Assertions.assertEquals(2, spaces.getFirst().getCount());
+		Assertions.assertEquals(Instant.parse("2015-04-08T06:30:00Z"), spaces.getFirst().getLastUpdate());
+		Assertions.assertEquals("XXX", spaces.get(1).getId());
+		Assertions.assertEquals(1, spaces.get(1).getCount());
+
+		// Served from the cache
+		final var recent = resource.findAllActive("service:km:confluence:dig", 10, "recent");
+		Assertions.assertEquals(3, recent.size());
+		Assertions.assertEquals("XXX", recent.getFirst().getId());
+		Assertions.assertEquals("SPACE", recent.get(1).getId());
+		Assertions.assertEquals("BPRGDAD", recent.get(2).getId());
+		Assertions.assertNull(recent.get(2).getLastUpdate());
+		httpServer.verify(1, getRequestedFor(urlPathEqualTo("/rest/api/content/search")));
+	}
+
+	@Test
+	void findAllActiveLimitOverflow() throws IOException {
+		prepareMockActivity();
+
+		// The limit is bounded by the activity size
+		Assertions.assertEquals(3, resource.findAllActive("service:km:confluence:dig", Integer.MAX_VALUE, "count").size());
+	}
+
+	@Test
+	void findAllActivePaged() throws IOException {
+		prepareMockLogin();
+		httpServer.stubFor(get(urlPathEqualTo("/rest/api/content/search")).willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(
+				"{\"results\":[{\"id\":\"5\",\"space\":{\"key\":\"NEW\",\"name\":\"New\"},\"version\":{\"when\":\"2015-04-09T08:30:00.000+02:00\"}}],\"_links\":{\"next\":\"/rest/api/content/search?cursor=page2&limit=100\"}}")));
+		httpServer.stubFor(get(urlPathEqualTo("/rest/api/content/search")).withQueryParam("cursor", equalTo("page2")).willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(fixture("confluence-content-search.json"))));
+		httpServer.start();
+
+		// Both pages are aggregated, the last one has no next link
+		final var spaces = resource.findAllActive("service:km:confluence:dig", 10, "count");
+		Assertions.assertEquals(Set.of("SPACE", "NEW", "XXX", "BPRGDAD"), spaces.stream().map(ActiveSpace::getId).collect(Collectors.toSet()));
+		Assertions.assertEquals(2, spaces.getFirst().getCount());
+		httpServer.verify(2, getRequestedFor(urlPathEqualTo("/rest/api/content/search")));
+	}
+
+	@Test
+	void findAllActiveNoRight() throws IOException {
+		initSpringSecurityContext("any");
+		Assertions.assertEquals(0, resource.findAllActive("service:km:confluence:dig", 10, "count").size());
+	}
+
+	@Test
+	void findAllLinks() throws IOException {
+		prepareMockActivity();
+		final var response = resource.findAllLinks("service:km:confluence:dig");
+		Assertions.assertEquals(HttpStatus.SC_OK, response.getStatus());
+		Assertions.assertTrue(response.getCacheControl().isPrivate());
+
+		// The compression is left to the container
+		Assertions.assertNull(response.getHeaderString("Content-Encoding"));
+		@SuppressWarnings("unchecked")
+		final var links = (List<SpaceLink>) response.getEntity();
+		Assertions.assertEquals(List.of("SPACE", "XXX", "BPRGDAD"), links.stream().map(SpaceLink::getId).toList());
+		Assertions.assertEquals("My Space Name", links.get(0).getName());
+		Assertions.assertEquals("http://localhost:8120/display/SPACE", links.get(0).getUrl());
+
+		// Cached for this user
+		resource.findAllLinks("service:km:confluence:dig");
+		httpServer.verify(1, getRequestedFor(urlPathEqualTo("/rest/api/content/search")));
+		httpServer.verify(getRequestedFor(urlPathEqualTo("/rest/api/content/search")).withQueryParam("cql", equalTo("contributor = \"junit\" order by lastmodified desc")));
+	}
+
+	@Test
+	void findAllLinksNotAvailable() throws IOException {
+		prepareMockLogin();
+		httpServer.stubFor(get(urlPathEqualTo("/rest/api/content/search")).willReturn(aResponse().withStatus(HttpStatus.SC_INTERNAL_SERVER_ERROR)));
+		httpServer.start();
+
+		// No space, neither cached by the server nor by the browser
+		final var response = resource.findAllLinks("service:km:confluence:dig");
+		Assertions.assertEquals(List.of(), response.getEntity());
+		Assertions.assertTrue(response.getCacheControl().isNoStore());
+		Assertions.assertNull(cache.links.getIfPresent(ConfluenceCache.toKey("service:km:confluence:dig", "junit")));
+
+		// The next lookup reads the spaces again
+		httpServer.stubFor(get(urlPathEqualTo("/rest/api/content/search")).willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(fixture("confluence-content-search.json"))));
+		Assertions.assertEquals(3, ((List<?>) resource.findAllLinks("service:km:confluence:dig").getEntity()).size());
+	}
+
+	@Test
+	void findAllLinksNoRight() throws IOException {
+		initSpringSecurityContext("any");
+		Assertions.assertEquals(List.of(), resource.findAllLinks("service:km:confluence:dig").getEntity());
+	}
+
+	private void prepareMockActivity() throws IOException {
+		prepareMockLogin();
+		httpServer.stubFor(get(urlPathEqualTo("/rest/api/content/search")).willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(fixture("confluence-content-search.json"))));
+		httpServer.start();
+	}
+
 	private void checkSpace(final Space space) {
 		Assertions.assertEquals("SPACE", space.getId());
 		Assertions.assertEquals("My Space Name", space.getName());
@@ -394,11 +1193,15 @@ class ConfluencePluginResourceTest extends AbstractServerTest {
 		return space;
 	}
 
-	private Space checkSpaceActivityAvatar(final Space space) {
+	private Space checkSpaceActivityAvatar(final Space space) throws IOException {
 		checkSpaceActivity(space);
 		final var activity = space.getActivity();
 		Assertions.assertTrue(activity.getAuthorAvatar().startsWith("data:image/png;base64,iVBORw0K"));
-		Assertions.assertEquals(3614, activity.getAuthorAvatar().length());
+
+		// The 256x256 avatar has been downscaled
+		final var image = ImageIO.read(new ByteArrayInputStream(Base64.getDecoder().decode(Strings.CS.removeStart(activity.getAuthorAvatar(), "data:image/png;base64,"))));
+		Assertions.assertEquals(48, image.getWidth());
+		Assertions.assertEquals(48, image.getHeight());
 		return space;
 	}
 
@@ -0,0 +1,182 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.confluence;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+
+import jakarta.transaction.Transactional;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.hc.core5.http.HttpStatus;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.ligoj.app.AbstractServerTest;
+import org.ligoj.app.model.Node;
+import org.ligoj.app.model.Parameter;
+import org.ligoj.app.model.ParameterValue;
+import org.ligoj.app.model.Project;
+import org.ligoj.app.model.Subscription;
+import org.ligoj.app.plugin.km.KmResource;
+import org.ligoj.app.resource.subscription.SubscriptionResource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.test.annotation.Rollback;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+/**
+ * Test class of {@link ConfluenceSearchResource}
+ */
+@ExtendWith(SpringExtension.class)
+@ContextConfiguration(locations = "classpath:/META-INF/spring/application-context-test.xml")
+@Rollback
+@Transactional
+class ConfluenceSearchResourceTest extends AbstractServerTest {
+
+	private static final String KEY = ConfluenceCache.toKey("http://localhost:8120", "SPACE");
+
+	@Autowired
+	private ConfluenceSearchResource resource;
+
+	@Autowired
+	private SubscriptionResource subscriptionResource;
+
+	@Autowired
+	private ConfluenceCache cache;
+
+	@Autowired
+	private ConfluenceSessionPool sessions;
+
+	private int subscription;
+
+	@BeforeEach
+	void prepareData() throws IOException {
+		// Only with Spring context
+		persistSystemEntities();
+		persistEntities("csv", new Class<?>[]{Node.class, Parameter.class, Project.class, Subscription.class, ParameterValue.class}, StandardCharsets.UTF_8);
+		this.subscription = getSubscription("Jupiter", KmResource.SERVICE_KEY);
+		cache.clear();
+		sessions.clear();
+	}
+
+	private String fixture(final String name) throws IOException {
+		return IOUtils.toString(new ClassPathResource("mock-server/confluence/" + name).getInputStream(), StandardCharsets.UTF_8);
+	}
+
+	private void prepareMockContent() throws IOException {
+		httpServer.stubFor(get(urlEqualTo("/dologin.action")).willReturn(aResponse().withStatus(HttpStatus.SC_OK)));
+		httpServer.stubFor(post(urlEqualTo("/dologin.action")).willReturn(aResponse().withStatus(HttpStatus.SC_MOVED_TEMPORARILY).withHeader("Location", "/")));
+		httpServer.stubFor(get(urlPathEqualTo("/rest/api/content")).withQueryParam("start", equalTo("0")).willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(fixture("confluence-space-SPACE-content.json"))));
+		httpServer.stubFor(get(urlPathEqualTo("/rest/api/content")).withQueryParam("start", equalTo("2")).willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(fixture("confluence-space-SPACE-content-2.json"))));
+		httpServer.stubFor(get(urlPathEqualTo("/rest/api/content/search")).willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(fixture("confluence-space-SPACE-content-delta.json"))));
+		httpServer.start();
+	}
+
+	@Test
+	void search() throws IOException {
+		prepareMockContent();
+		resource.index(subscriptionResource.getParametersNoCheck(subscription));
+
+		// Both pages of contents are indexed
+		Assertions.assertEquals(1, resource.search("notes", 10).size());
+		Assertions.assertEquals(1, resource.search("decisions", 10).size());
+		final List<IndexedPage> pages = resource.search("My pa", 10);
+		Assertions.assertEquals(1, pages.size());
+		final var page = pages.get(0);
+		Assertions.assertEquals("1", page.getId());
+		Assertions.assertEquals("My Page", page.getName());
+		Assertions.assertEquals("SPACE", page.getSpace());
+		Assertions.assertEquals(subscription, page.getSubscription());
+		Assertions.assertEquals(List.of("architecture"), page.getLabels());
+		Assertions.assertEquals("http://localhost:8120/display/SPACE/Page", page.getUrl());
+		Assertions.assertEquals(Instant.parse("2015-04-08T06:30:00Z"), page.getLastModified());
+
+		// Labels and accents
+		Assertions.assertEquals("1", resource.search("ARCHI", 10).get(0).getId());
+		Assertions.assertEquals("5", resource.search("Decision", 10).get(0).getId());
+		Assertions.assertEquals("http://localhost:8120/pages/viewpage.action?pageId=5", resource.search("Decision", 10).get(0).getUrl());
+		Assertions.assertTrue(resource.search("unknown", 10).isEmpty());
+		Assertions.assertTrue(resource.search(null, 10).isEmpty());
+		Assertions.assertTrue(resource.search(" ", 10).isEmpty());
+
+		// The space is fresh, no request for the search
+		httpServer.verify(0, getRequestedFor(urlPathEqualTo("/rest/api/content/search")));
+	}
+
+	@Test
+	void searchDelta() throws IOException {
+		prepareMockContent();
+		final var parameters = subscriptionResource.getParametersNoCheck(subscription);
+		resource.index(parameters);
+		Assertions.assertEquals(Instant.parse("2015-04-08T06:30:00Z"), cache.pages.getSince(KEY));
+		resource.index(parameters);
+
+		// The updated page replaces the previous one
+		httpServer.verify(1, getRequestedFor(urlPathEqualTo("/rest/api/content/search")));
+		Assertions.assertTrue(resource.search("notes", 10).isEmpty());
+		final var pages = resource.search("release", 10);
+		Assertions.assertEquals(1, pages.size());
+		Assertions.assertEquals("Release Plan", pages.get(0).getName());
+		Assertions.assertEquals(List.of("roadmap"), resource.search("roadmap", 10).get(0).getLabels());
+
+		// Most recent first
+		Assertions.assertEquals(List.of("3", "1"), resource.search("p", 10).stream().map(IndexedPage::getId).toList());
+		Assertions.assertEquals(1, resource.search("p", 1).size());
+	}
+
+	@Test
+	void searchIndexQueued() throws Exception {
+		prepareMockContent();
+
+		// Nothing is indexed for a blank query
+		Assertions.assertTrue(resource.search(" ", 10).isEmpty());
+		Assertions.assertEquals(0, cache.pages.getRefreshed(KEY));
+
+		// The stale space is indexed in background, the answer only relies on the current index
+		Assertions.assertTrue(resource.search("page", 10).isEmpty());
+		for (var i = 0; i < 50 && cache.pages.getRefreshed(KEY) == 0; i++) {
+			Thread.sleep(100);
+		}
+		Assertions.assertEquals(1, resource.search("My pa", 10).size());
+	}
+
+	@Test
+	void searchFailedPage() throws IOException {
+		prepareMockContent();
+		httpServer.stubFor(get(urlPathEqualTo("/rest/api/content")).withQueryParam("start", equalTo("2")).willReturn(aResponse().withStatus(HttpStatus.SC_INTERNAL_SERVER_ERROR)));
+
+		// A failed page is not the end of the contents, nothing is indexed
+		Assertions.assertThrows(IOException.class, () -> resource.index(subscriptionResource.getParametersNoCheck(subscription)));
+		Assertions.assertNull(cache.pages.getSince(KEY));
+		Assertions.assertEquals(0, cache.pages.getRefreshed(KEY));
+	}
+
+	@Test
+	void searchNoRight() throws IOException {
+		prepareMockContent();
+		resource.index(subscriptionResource.getParametersNoCheck(subscription));
+		initSpringSecurityContext("any");
+		Assertions.assertTrue(resource.search("page", 10).isEmpty());
+	}
+
+	@Test
+	void pageIndexTerms() {
+		Assertions.assertEquals(Set.of("my", "page", "ete"), PageIndex.toTerms("My  page, été!"));
+		Assertions.assertTrue(PageIndex.toTerms(null).isEmpty());
+	}
+}
@@ -0,0 +1,111 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.confluence;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import jakarta.transaction.Transactional;
+import jakarta.ws.rs.ForbiddenException;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.hc.core5.http.HttpStatus;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.ligoj.app.AbstractServerTest;
+import org.ligoj.app.model.Node;
+import org.ligoj.app.model.Parameter;
+import org.ligoj.app.model.ParameterValue;
+import org.ligoj.app.model.Project;
+import org.ligoj.app.model.Subscription;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.test.annotation.Rollback;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+/**
+ * Test class of {@link ConfluenceWarmupResource}
+ */
+@ExtendWith(SpringExtension.class)
+@ContextConfiguration(locations = "classpath:/META-INF/spring/application-context-test.xml")
+@Rollback
+@Transactional
+class ConfluenceWarmupResourceTest extends AbstractServerTest {
+
+	private static final String NODE = "service:km:confluence:dig";
+
+	@Autowired
+	private ConfluenceWarmupResource resource;
+
+	@Autowired
+	private ConfluenceCache cache;
+
+	@Autowired
+	private ConfluenceSessionPool sessions;
+
+	@BeforeEach
+	void prepareData() throws IOException {
+		// Only with Spring context
+		persistSystemEntities();
+		persistEntities("csv", new Class<?>[]{Node.class, Parameter.class, Project.class, Subscription.class, ParameterValue.class}, StandardCharsets.UTF_8);
+		cache.clear();
+		sessions.clear();
+	}
+
+	private String fixture(final String name) throws IOException {
+		return IOUtils.toString(new ClassPathResource("mock-server/confluence/" + name).getInputStream(), StandardCharsets.UTF_8);
+	}
+
+	@Test
+	void warmUp() throws IOException {
+		httpServer.stubFor(get(urlEqualTo("/dologin.action")).willReturn(aResponse().withStatus(HttpStatus.SC_OK)));
+		httpServer.stubFor(post(urlEqualTo("/dologin.action")).willReturn(aResponse().withStatus(HttpStatus.SC_MOVED_TEMPORARILY).withHeader("Location", "/")));
+		httpServer.stubFor(get(urlEqualTo("/forgotuserpassword.action")).willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(fixture("confluence-forgotuserpassword.action"))));
+		httpServer.stubFor(get(urlPathEqualTo("/rest/api/content/search")).willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(fixture("confluence-content-search.json"))));
+		httpServer.stubFor(get(urlEqualTo("/rest/api/space/SPACE")).willReturn(aResponse().withStatus(HttpStatus.SC_OK).withBody(fixture("confluence-space-SPACE.json"))));
+		httpServer.start();
+
+		// Disabled by default
+		resource.onStartup();
+		Assertions.assertNull(resource.getStatus().getStart());
+
+		resource.warmUp(2);
+		final var status = resource.getStatus();
+		Assertions.assertNotNull(status.getStart());
+		Assertions.assertNotNull(status.getEnd());
+		Assertions.assertEquals(1, status.getTotal());
+		Assertions.assertEquals(1, status.getCompleted());
+		Assertions.assertEquals(Map.of(NODE, "5.7.5"), status.getVersions());
+		Assertions.assertTrue(status.getFailures().isEmpty());
+
+		// The caches are primed
+		Assertions.assertNotNull(cache.nodeActivities.getIfPresent(NODE));
+		Assertions.assertEquals("SPACE", cache.spaces.getIfPresent(ConfluenceCache.toKey("http://localhost:8120", "SPACE")).getId());
+	}
+
+	@Test
+	void warmUpFailed() {
+		resource.warmUp(1);
+		final var status = resource.getStatus();
+		Assertions.assertEquals(1, status.getCompleted());
+		Assertions.assertTrue(status.getFailures().containsKey(NODE));
+		Assertions.assertTrue(status.getVersions().isEmpty());
+	}
+
+	@Test
+	void getStatusNoRight() {
+		initSpringSecurityContext("any");
+		Assertions.assertThrows(ForbiddenException.class, resource::getStatus);
+	}
+}
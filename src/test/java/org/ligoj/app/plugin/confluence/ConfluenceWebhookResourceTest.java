@@ -0,0 +1,237 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.confluence;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import jakarta.transaction.Transactional;
+import jakarta.ws.rs.ForbiddenException;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.ligoj.app.AbstractAppTest;
+import org.ligoj.app.iam.SimpleUser;
+import org.ligoj.app.model.Node;
+import org.ligoj.app.model.Parameter;
+import org.ligoj.app.model.ParameterValue;
+import org.ligoj.app.model.Project;
+import org.ligoj.app.model.Subscription;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.test.annotation.Rollback;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+/**
+ * Test class of {@link ConfluenceWebhookResource}. The Confluence sender is mocked by the signed fixtures.
+ */
+@ExtendWith(SpringExtension.class)
+@ContextConfiguration(locations = "classpath:/META-INF/spring/application-context-test.xml")
+@Rollback
+@Transactional
+class ConfluenceWebhookResourceTest extends AbstractAppTest {
+
+	private static final String NODE = "service:km:confluence:dig";
+
+	private static final String KEY = ConfluenceCache.toKey("http://localhost:8120", "SPACE");
+
+	@Autowired
+	private ConfluenceWebhookResource resource;
+
+	@Autowired
+	private ConfluenceCache cache;
+
+	@Autowired
+	private AvatarStore avatarStore;
+
+	@BeforeEach
+	void prepareData() throws IOException {
+		// Only with Spring context
+		persistEntities("csv",
+				new Class<?>[]{Node.class, Parameter.class, Project.class, Subscription.class, ParameterValue.class},
+				StandardCharsets.UTF_8);
+		cache.clear();
+		avatarStore.clear();
+	}
+
+	private String fixture(final String name) throws IOException {
+		return IOUtils.toString(new ClassPathResource("mock-server/confluence/webhook-" + name + ".json").getInputStream(), StandardCharsets.UTF_8);
+	}
+
+	private String sign(final String body) throws GeneralSecurityException {
+		final var mac = Mac.getInstance("HmacSHA256");
+		mac.init(new SecretKeySpec("junit-webhook".getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+		return "sha256=" + HexFormat.of().formatHex(mac.doFinal(body.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	private void receive(final String name) throws IOException, GeneralSecurityException {
+		final var body = fixture(name);
+		resource.receive(NODE, sign(body), body);
+	}
+
+	private SpaceActivity newActivity(final String author) {
+		final var user = new SimpleUser();
+		user.setId(author);
+		final var activity = new SpaceActivity();
+		activity.setAuthor(user);
+		activity.setAvatar("avatar");
+		activity.setPage("Old Page");
+		return activity;
+	}
+
+	@Test
+	void receivePageUpdated() throws IOException, GeneralSecurityException {
+		cache.activities.put(KEY, Optional.of(newActivity("user1")));
+		cache.nodeActivities.put(NODE, List.of());
+		receive("page-updated");
+
+		final var activity = cache.activities.getIfPresent(KEY).orElseThrow();
+		Assertions.assertEquals("user1", activity.getAuthor().getId());
+		Assertions.assertEquals("My Page", activity.getPage());
+		Assertions.assertEquals("http://localhost:8120/pages/viewpage.action?pageId=1", activity.getPageUrl());
+		Assertions.assertEquals(Instant.ofEpochMilli(1428394333000L), activity.getTimestamp());
+
+		// Same author, the avatar is kept
+		Assertions.assertEquals("avatar", activity.getAvatar());
+		Assertions.assertNull(cache.nodeActivities.getIfPresent(NODE));
+
+		// The index of this space is stale
+		Assertions.assertEquals(0, cache.pages.getRefreshed(KEY));
+	}
+
+	@Test
+	void receivePageUpdatedOtherAuthor() throws IOException, GeneralSecurityException {
+		cache.activities.put(KEY, Optional.of(newActivity("user2")));
+		receive("page-updated");
+		final var activity = cache.activities.getIfPresent(KEY).orElseThrow();
+		Assertions.assertEquals("user1", activity.getAuthor().getId());
+		Assertions.assertNull(activity.getAvatar());
+	}
+
+	@Test
+	void receivePageMoved() {
+		cache.activities.put(KEY, Optional.of(newActivity("user1")));
+		final var event = newPageEvent("page_moved");
+		resource.apply("http://localhost:8120", NODE, event);
+
+		// Not an edit
+		Assertions.assertNull(cache.activities.getIfPresent(KEY));
+		Assertions.assertNull(cache.history.getLastActive(KEY));
+	}
+
+	@Test
+	void receivePageIncomplete() {
+		cache.activities.put(KEY, Optional.of(newActivity("user1")));
+		final var event = newPageEvent("page_updated");
+		event.setUser(null);
+		resource.apply("http://localhost:8120", NODE, event);
+		event.setUser("user1");
+		event.getPage().setSpaceKey(null);
+		resource.apply("http://localhost:8120", NODE, event);
+		event.setEvent("space_updated");
+		event.setSpace(new WebhookEvent.SpaceRef());
+		resource.apply("http://localhost:8120", NODE, event);
+
+		// Ignored events
+		Assertions.assertEquals("Old Page", cache.activities.getIfPresent(KEY).orElseThrow().getPage());
+		Assertions.assertNull(cache.history.getLastActive(KEY));
+	}
+
+	@Test
+	void receivePageUpdatedNoModificationDate() {
+		final var event = newPageEvent("page_updated");
+		resource.apply("http://localhost:8120", NODE, event);
+
+		// The activity is updated, but this edit is not counted
+		Assertions.assertEquals("My Page", cache.activities.getIfPresent(KEY).orElseThrow().getPage());
+		Assertions.assertNull(cache.history.getLastActive(KEY));
+
+		// Counted once, with its modification date
+		final var now = System.currentTimeMillis();
+		event.getPage().setModificationDate(now);
+		resource.apply("http://localhost:8120", NODE, event);
+		resource.apply("http://localhost:8120", NODE, event);
+		final var today = LocalDate.ofEpochDay(Math.floorDiv(now, 86400000L));
+		Assertions.assertEquals(today, cache.history.getLastActive(KEY));
+		Assertions.assertArrayEquals(new int[] { 1 }, cache.history.getCounts(KEY, today, today));
+	}
+
+	private WebhookEvent newPageEvent(final String name) {
+		final var page = new WebhookEvent.Content();
+		page.setId("1");
+		page.setTitle("My Page");
+		page.setSpaceKey("SPACE");
+		final var event = new WebhookEvent();
+		event.setEvent(name);
+		event.setUser("user1");
+		event.setPage(page);
+		return event;
+	}
+
+	@Test
+	void receivePageRemoved() throws IOException, GeneralSecurityException {
+		cache.activities.put(KEY, Optional.of(newActivity("user1")));
+		cache.pages.put(new PageIndex.Entry(KEY, "1", "My Page", List.of(), null, "http://localhost:8120/display/SPACE/Page"));
+		cache.pages.setRefreshed(KEY, 1);
+		receive("page-removed");
+		Assertions.assertNull(cache.activities.getIfPresent(KEY));
+		Assertions.assertTrue(cache.pages.search("page", e -> true, 10).isEmpty());
+		Assertions.assertEquals(1, cache.pages.getRefreshed(KEY));
+	}
+
+	@Test
+	void receiveSpaceRemoved() throws IOException, GeneralSecurityException {
+		cache.activities.put(KEY, Optional.of(newActivity("user1")));
+		cache.nodeActivities.put(NODE, List.of());
+		cache.pages.put(new PageIndex.Entry(KEY, "2", "Other Page", List.of(), null, "http://localhost:8120/display/SPACE/Other"));
+		final var catalog = new SpaceCatalog(Map.of("SPACE", "My Space Name", "OTHER", "Other"));
+		cache.catalogs.put(NODE, catalog);
+		cache.history.record(KEY, Instant.now(), false);
+		receive("space-removed");
+		Assertions.assertNull(cache.history.getLastActive(KEY));
+		Assertions.assertTrue(catalog.findAll("space", 10).isEmpty());
+		Assertions.assertEquals(1, catalog.findAll("", 10).size());
+		Assertions.assertNull(cache.activities.getIfPresent(KEY));
+		Assertions.assertTrue(cache.pages.search("page", e -> true, 10).isEmpty());
+		Assertions.assertNull(cache.pages.getSince(KEY));
+		Assertions.assertNull(cache.nodeActivities.getIfPresent(NODE));
+	}
+
+	@Test
+	void receiveUserUpdated() throws IOException, GeneralSecurityException {
+		final var otherKey = ConfluenceCache.toKey("http://localhost:8120", "OTHER");
+		cache.activities.put(KEY, Optional.of(newActivity("user1")));
+		cache.activities.put(otherKey, Optional.of(newActivity("user2")));
+		receive("user-updated");
+		Assertions.assertNull(cache.activities.getIfPresent(KEY));
+		Assertions.assertNotNull(cache.activities.getIfPresent(otherKey));
+	}
+
+	@Test
+	void receiveInvalidSignature() throws IOException {
+		final var body = fixture("page-updated");
+		Assertions.assertThrows(ForbiddenException.class, () -> resource.receive(NODE, "sha256=0000", body));
+		Assertions.assertThrows(ForbiddenException.class, () -> resource.receive(NODE, null, body));
+	}
+
+	@Test
+	void receiveNoSecret() throws IOException {
+		final var body = fixture("page-updated");
+		Assertions.assertThrows(ForbiddenException.class, () -> resource.receive("service:km:confluence", sign(body), body));
+	}
+}